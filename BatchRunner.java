@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.management.JMException;
+
+/**
+ * Runs many independent program files in one JVM, in parallel.
+ * Every program gets its own Computer and runs on a work-stealing pool.
+ * The output of each program is kept together and printed in the order the
+ * files were given, followed by the throughput of the whole run.
+ * With -Dpostfix.cache set, programs run before are taken from the ProgramCache.
+ * @author Quang Vo
+ */
+class BatchRunner {
+
+	/**
+	 * The outcome of running one program.
+	 */
+	static class Result {
+		final String filename;	// the program file
+		final byte[] output;	// everything the program printed
+		final int symbols;		// number of symbols in the program
+		final String error;		// the error that stopped the program, null if it finished
+
+		/**
+		 * Create the outcome of a program.
+		 * @param filename the program file.
+		 * @param output everything the program printed.
+		 * @param symbols number of symbols in the program.
+		 * @param error the error that stopped the program, null if it finished.
+		 */
+		Result(String filename, byte[] output, int symbols, String error) {
+			this.filename = filename;
+			this.output = output;
+			this.symbols = symbols;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Run one program on its own computer and capture its output.
+	 * Anything the program throws is recorded as its error, except a VirtualMachineError
+	 * other than StackOverflowError, which is thrown on.
+	 * @param filename the program file.
+	 * @return the outcome of the program.
+	 */
+	public static Result runOne(String filename) {
+		CaptureSink out = new CaptureSink();
+		int symbols = 0;
+		String error = null;
+
+		try {
+			CompiledProgram program = ProgramCache.load(filename);
+			symbols = program.size();
+			ProgramExecutor executor = new ProgramExecutor(program, new Computer());
+			executor.setOutput(out);
+			executor.process(program.size());
+		}
+		catch(VirtualMachineError e) {
+			if(!(e instanceof StackOverflowError)){
+				throw e; //the JVM itself is in trouble, the batch can't go on
+			}
+			error = e.toString(); //only this program recursed too deep
+		}
+		catch(Throwable e) {
+			error = e.toString(); //one bad program doesn't stop the batch
+		}
+
+		return new Result(filename, out.toByteArray(), symbols, error);
+	}
+
+	/**
+	 * Run all the programs and print their output in order.
+	 * @param filenames the program files.
+	 * @param parallelism the number of worker threads.
+	 * @param out where to print the output.
+	 */
+	public static void runAll(List<String> filenames, int parallelism, PrintStream out) {
+		long startTime = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+
+		for(String filename : filenames){
+			tasks.add(pool.submit(() -> runOne(filename)));
+		}
+
+		long totalSymbols = 0;
+		int failed = 0;
+		try {
+			for(ForkJoinTask<Result> task : tasks){ //results are printed in order as soon as they are ready
+				Result result = task.join();
+				out.println("==> " + result.filename + " <==");
+				out.write(result.output, 0, result.output.length);
+				if(result.error != null){
+					out.println("Error: " + result.error);
+					failed++;
+				}
+				totalSymbols += result.symbols;
+			}
+		}
+		finally {
+			pool.shutdown(); //also when a task threw
+		}
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		out.println();
+		out.printf("%d programs (%d failed), %d symbols in %.3f s: %.1f programs/s, %.0f symbols/s%n",
+				filenames.size(), failed, totalSymbols, seconds, filenames.size() / seconds, totalSymbols / seconds);
+	}
+
+	/**
+	 * Return the program files in a directory, sorted by name, or listed in a manifest file.
+	 * Paths in a manifest are one per line and relative to the manifest.
+	 * @param path a directory or a manifest file.
+	 * @return the program files.
+	 * @throws IOException when the directory or manifest can't be read.
+	 */
+	public static List<String> programFiles(String path) throws IOException {
+		File file = new File(path);
+		List<String> filenames = new ArrayList<>();
+
+		if(file.isDirectory()){
+			File[] files = file.listFiles(File::isFile);
+			if(files == null){
+				throw new IOException("Can't list " + path);
+			}
+			Arrays.sort(files);
+			for(File f : files){
+				filenames.add(f.getPath());
+			}
+		}
+		else{
+			for(String line : Files.readAllLines(file.toPath())){
+				line = line.trim();
+				if(!line.isEmpty()){
+					File f = new File(line);
+					filenames.add(f.isAbsolute() ? line : new File(file.getAbsoluteFile().getParentFile(), line).getPath());
+				}
+			}
+		}
+		return filenames;
+	}
+
+	/**
+	 * The batch entry point.
+	 * @param args a directory or manifest file, and optionally the number of worker threads.
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1 || args.length > 2) {
+			System.out.println("Usage: java BatchRunner [directory|manifest] [threads]");
+			System.exit(0);
+		}
+
+		int parallelism = args.length == 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		try {
+			InterpreterStats stats = InterpreterStats.active(); //on with -Dpostfix.stats=true
+			if(stats != null){
+				InterpreterStats.register();
+			}
+			runAll(programFiles(args[0]), parallelism, System.out);
+			if(stats != null){
+				System.err.println(stats);
+			}
+		}
+		catch(IOException | JMException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,412 @@
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks for ProgramStack, SymbolTable and Computer.
+ * Each benchmark is warmed up, then timed over several iterations, and the
+ * bytes allocated by the benchmark thread are counted to give B/op.
+ * JMH needs benchmark classes in a named package, and these classes live in
+ * the unnamed package, so this is a small harness with the same warmup and
+ * measurement structure instead.
+ * Run with: java Benchmarks [name filter]
+ * @author Quang Vo
+ */
+class Benchmarks {
+	private static final int WARMUP_ITERATIONS = 5;		// iterations run before measuring
+	private static final int ITERATIONS = 10;			// iterations measured
+	private static final long ITERATION_NANOS = 200_000_000L;	// minimum length of an iteration
+
+	private static final int[] SIZES = {16, 1024, 65536};		// table and stack sizes
+	private static final double[] LOAD_FACTORS = {0.25, 0.5, 0.75};	// SymbolTable fill before measuring
+
+	private static volatile long sink;	// results go here so the JIT can't drop the work
+
+	/**
+	 * The code being measured.
+	 */
+	interface Body {
+		/**
+		 * Run the code once.
+		 * @return any value computed, so the work isn't optimized away.
+		 */
+		long run();
+	}
+
+	/**
+	 * A named piece of code to measure.
+	 */
+	static class Benchmark {
+		final String name;		// the benchmark
+		final int opsPerRun;	// the number of operations one run of the body does
+		final Body body;		// the code being measured
+
+		/**
+		 * Create a benchmark.
+		 * @param name the benchmark.
+		 * @param opsPerRun the number of operations one run of the body does.
+		 * @param body the code being measured.
+		 */
+		Benchmark(String name, int opsPerRun, Body body) {
+			this.name = name;
+			this.opsPerRun = opsPerRun;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * The measurement of one benchmark.
+	 */
+	static class Result {
+		final String name;			// the benchmark
+		final double nanosPerOp;	// average time per operation
+		final double errorNanos;	// standard deviation over the iterations
+		final double bytesPerOp;	// average bytes allocated per operation, -1 if unknown
+
+		/**
+		 * Create a measurement.
+		 * @param name the benchmark.
+		 * @param nanosPerOp average time per operation.
+		 * @param errorNanos standard deviation over the iterations.
+		 * @param bytesPerOp average bytes allocated per operation, -1 if unknown.
+		 */
+		Result(String name, double nanosPerOp, double errorNanos, double bytesPerOp) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.errorNanos = errorNanos;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		/**
+		 * Create a table row for the measurement.
+		 * @return the row.
+		 */
+		public String toString() {
+			return String.format("%-48s %14.2f +- %8.2f ns/op %12.1f B/op", name, nanosPerOp, errorNanos, bytesPerOp);
+		}
+	}
+
+	/**
+	 * Measure a benchmark.
+	 * @param name the benchmark.
+	 * @param opsPerRun the number of operations one run of the body does.
+	 * @param body the code being measured.
+	 * @return the measurement.
+	 */
+	public static Result measure(String name, int opsPerRun, Body body) {
+		for(int i = 0; i < WARMUP_ITERATIONS; i++){
+			iteration(opsPerRun, body);
+		}
+
+		double[] nanos = new double[ITERATIONS];
+		double bytes = 0;
+		for(int i = 0; i < ITERATIONS; i++){
+			long allocatedBefore = allocatedBytes();
+			long[] timed = iteration(opsPerRun, body);
+			long allocated = allocatedBytes() - allocatedBefore;
+			nanos[i] = (double) timed[0] / timed[1];
+			bytes += allocatedBefore < 0 ? -1 : (double) allocated / timed[1];
+		}
+
+		double mean = 0;
+		for(double n : nanos){
+			mean += n / ITERATIONS;
+		}
+		double variance = 0;
+		for(double n : nanos){
+			variance += (n - mean) * (n - mean) / ITERATIONS;
+		}
+		return new Result(name, mean, Math.sqrt(variance), bytes < 0 ? -1 : bytes / ITERATIONS);
+	}
+
+	/**
+	 * Run the body for at least ITERATION_NANOS.
+	 * @param opsPerRun the number of operations one run of the body does.
+	 * @param body the code being measured.
+	 * @return the time taken and the number of operations done.
+	 */
+	private static long[] iteration(int opsPerRun, Body body) {
+		long ops = 0;
+		long result = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			result += body.run();
+			ops += opsPerRun;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < ITERATION_NANOS);
+		sink = result;
+		return new long[] {elapsed, ops};
+	}
+
+	/**
+	 * Return the bytes allocated so far by the current thread.
+	 * @return the bytes, or -1 if the JVM doesn't count them.
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+
+	/**
+	 * Create the benchmarks for ProgramStack.
+	 * @param benchmarks the list to add them to.
+	 */
+	private static void stackBenchmarks(List<Benchmark> benchmarks) {
+		for(int size : SIZES){
+			benchmarks.add(new Benchmark("ProgramStack.push+pop size=" + size, size, () -> {
+				ProgramStack<Integer> s = new ProgramStack<>();
+				for(int i = 0; i < size; i++){
+					s.push(i);
+				}
+				long sum = 0;
+				for(int i = 0; i < size; i++){
+					sum += s.pop();
+				}
+				return sum;
+			}));
+
+			ProgramStack<Integer> full = new ProgramStack<>();
+			for(int i = 0; i < size; i++){
+				full.push(i);
+			}
+			benchmarks.add(new Benchmark("ProgramStack.toArray size=" + size, 1, () -> full.toArray().length));
+		}
+	}
+
+	/**
+	 * Create the benchmarks for SymbolTable.
+	 * @param benchmarks the list to add them to.
+	 */
+	private static void tableBenchmarks(List<Benchmark> benchmarks) {
+		for(int size : SIZES){
+			for(double loadFactor : LOAD_FACTORS){
+				int n = (int) (size * loadFactor);
+				String[] keys = keys(n, "k");
+				String[] missing = keys(n, "m");
+				String label = " size=" + size + " load=" + loadFactor;
+
+				SymbolTable<Integer> filled = new SymbolTable<>(size);
+				for(int i = 0; i < n; i++){
+					filled.put(keys[i], i);
+				}
+
+				benchmarks.add(new Benchmark("SymbolTable.put(new)" + label, n, () -> {
+					SymbolTable<Integer> t = new SymbolTable<>(size);
+					for(int i = 0; i < n; i++){
+						t.put(keys[i], i);
+					}
+					return t.size();
+				}));
+				benchmarks.add(new Benchmark("SymbolTable.put(replace)" + label, n, () -> {
+					for(int i = 0; i < n; i++){
+						filled.put(keys[i], i);
+					}
+					return filled.size();
+				}));
+				benchmarks.add(new Benchmark("SymbolTable.get(hit)" + label, n, () -> {
+					long sum = 0;
+					for(int i = 0; i < n; i++){
+						sum += filled.get(keys[i]);
+					}
+					return sum;
+				}));
+				benchmarks.add(new Benchmark("SymbolTable.get(miss)" + label, n, () -> {
+					long misses = 0;
+					for(int i = 0; i < n; i++){
+						if(filled.get(missing[i]) == null){
+							misses++;
+						}
+					}
+					return misses;
+				}));
+				benchmarks.add(new Benchmark("SymbolTable.remove+put" + label, n, () -> {
+					for(int i = 0; i < n; i++){
+						filled.remove(keys[i]);
+						filled.put(keys[i], i);
+					}
+					return filled.size();
+				}));
+				benchmarks.add(new Benchmark("SymbolTable.rehash" + label, 1, () -> {
+					filled.rehash(size);
+					return filled.getCapacity();
+				}));
+			}
+		}
+	}
+
+	/**
+	 * Create the end-to-end benchmarks for Computer.
+	 * @param benchmarks the list to add them to.
+	 */
+	private static void computerBenchmarks(List<Benchmark> benchmarks) {
+		String[][] programs = {
+			{"arithmetic", program(new Random(1), 20000, 0)},
+			{"variables", program(new Random(2), 20000, 1)},
+			{"prints", program(new Random(3), 20000, 2)},
+			{"small", program(new Random(4), 20, 1)}, //a short program run many times
+		};
+
+		for(String[] program : programs){
+			Node<String> input = toNodes(program[1]);
+			CompiledProgram compiled = CompiledProgram.compile(input);
+			int symbols = compiled.size();
+
+			benchmarks.add(new Benchmark("Computer.process program=" + program[0], symbols, () -> {
+				Computer computer = new Computer();
+				computer.setOutput(OutputSink.NULL);
+				Node<String> remaining = input;
+				while(remaining != null){
+					remaining = computer.process(remaining, 10);
+				}
+				return computer.symbols.size();
+			}));
+			benchmarks.add(new Benchmark("ProgramExecutor.process program=" + program[0], symbols, () -> {
+				ProgramExecutor executor = new ProgramExecutor(compiled, new Computer());
+				executor.setOutput(OutputSink.NULL);
+				while(executor.remaining() > 0){
+					executor.process(10);
+				}
+				return executor.getStack().size();
+			}));
+
+			CompiledProgram optimized = Optimizer.optimize(compiled);
+			benchmarks.add(new Benchmark("Optimized ProgramExecutor program=" + program[0], symbols, () -> {
+				ProgramExecutor executor = new ProgramExecutor(optimized, new Computer());
+				executor.setOutput(OutputSink.NULL);
+				while(executor.remaining() > 0){
+					executor.process(10);
+				}
+				return executor.getStack().size();
+			}));
+
+			//translated once, as the programs above are compiled once
+			FusedInterpreter.Program[] fused = {new FusedInterpreter.Program(compiled), new FusedInterpreter.Program(optimized)};
+			String[] labels = {"FusedInterpreter.process program=", "Optimized FusedInterpreter program="};
+			for(int i = 0; i < fused.length; i++){
+				FusedInterpreter.Program translated = fused[i];
+				benchmarks.add(new Benchmark(labels[i] + program[0], symbols, () -> {
+					FusedInterpreter interpreter = new FusedInterpreter(translated, new Computer());
+					interpreter.setOutput(OutputSink.NULL);
+					while(interpreter.remaining() > 0){
+						interpreter.process(10);
+					}
+					return interpreter.size();
+				}));
+			}
+			BytecodeProgram bytecode = BytecodeCompiler.compile(optimized);
+			benchmarks.add(new Benchmark("BytecodeProgram.run program=" + program[0], symbols, () -> {
+				Computer computer = new Computer();
+				computer.setOutput(OutputSink.NULL);
+				bytecode.run(computer);
+				return computer.symbols.size();
+			}));
+			benchmarks.add(new Benchmark("FusedInterpreter translate+process program=" + program[0], symbols, () -> {
+				FusedInterpreter interpreter = new FusedInterpreter(compiled, new Computer());
+				interpreter.setOutput(OutputSink.NULL);
+				while(interpreter.remaining() > 0){
+					interpreter.process(10);
+				}
+				return interpreter.size();
+			}));
+		}
+
+		CompiledProgram prints = CompiledProgram.compile(toNodes(program(new Random(3), 20000, 2)));
+		benchmarks.add(new Benchmark("ProgramExecutor.process program=prints sink=buffered", prints.size(), () -> {
+			ProgramExecutor executor = new ProgramExecutor(prints, new Computer());
+			executor.setOutput(new BufferedSink(OutputStream.nullOutputStream())); //formatting, without the cost of a real stream
+			while(executor.remaining() > 0){
+				executor.process(10);
+			}
+			return executor.getStack().size();
+		}));
+	}
+
+	/**
+	 * Make distinct keys.
+	 * @param n the number of keys.
+	 * @param prefix the prefix of every key.
+	 * @return the keys.
+	 */
+	private static String[] keys(int n, String prefix) {
+		String[] keys = new String[n];
+		for(int i = 0; i < n; i++){
+			keys[i] = prefix + i;
+		}
+		return keys;
+	}
+
+	/**
+	 * Write a random program.
+	 * @param random the source of randomness.
+	 * @param statements the number of statements.
+	 * @param style 0 for literal arithmetic, 1 for variable updates, 2 for prints.
+	 * @return the program text.
+	 */
+	static String program(Random random, int statements, int style) {
+		StringBuilder p = new StringBuilder();
+		String[] vars = {"a", "b", "c", "d", "e", "f", "g", "h"};
+		for(String v : vars){
+			p.append(v).append(' ').append(random.nextInt(9) + 1).append(" =\n");
+		}
+		for(int i = 0; i < statements; i++){
+			String v = vars[random.nextInt(vars.length)];
+			if(style == 0){
+				p.append(v).append(' ').append(random.nextInt(100)).append(' ').append(random.nextInt(100)).append(" + ")
+					.append(random.nextInt(10)).append(" * =\n");
+			}
+			else if(style == 1){
+				p.append(v).append(' ').append(vars[random.nextInt(vars.length)]).append(random.nextBoolean() ? " +=\n" : " -=\n");
+			}
+			else{
+				p.append(v).append(' ').append(random.nextInt(100)).append(" + print\n");
+			}
+		}
+		return p.toString();
+	}
+
+	/**
+	 * Split a program into a queue of nodes, the way fileToNodeQueue does.
+	 * @param program the program text.
+	 * @return the front of the queue.
+	 */
+	static Node<String> toNodes(String program) {
+		Node<String> front = null;
+		Node<String> back = null;
+		for(String item : program.trim().split("\\s+")){
+			Node<String> newNode = new Node<>(item);
+			if(front == null){
+				front = back = newNode;
+			}
+			else{
+				back.setNext(newNode);
+				newNode.setPrev(back);
+				back = newNode;
+			}
+		}
+		return front;
+	}
+
+	/**
+	 * Run the benchmarks and print a table of the results.
+	 * @param args an optional filter; only benchmarks whose name contains it are run.
+	 */
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		List<Benchmark> benchmarks = new ArrayList<>();
+		stackBenchmarks(benchmarks);
+		tableBenchmarks(benchmarks);
+		computerBenchmarks(benchmarks);
+
+		for(Benchmark benchmark : benchmarks){
+			if(benchmark.name.contains(filter)){
+				System.out.println(measure(benchmark.name, benchmark.opsPerRun, benchmark.body));
+			}
+		}
+	}
+}
@@ -0,0 +1,406 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The binary form of a program, which is loaded without tokenizing anything.
+ * A program file is converted once with ProgramConverter, and the binary file is then
+ * decoded straight from a memory-mapped buffer into the opcode tables of a CompiledProgram.
+ * The format, where every number is an unsigned varint of 7 bits per byte:
+ *   "PFB1"                 4 bytes
+ *   counts                 the number of instructions, names and literals
+ *   names                  for each: the length, then the UTF-8 bytes
+ *   literals               for each distinct literal: the value, zigzag encoded
+ *   instructions           for each: operand << 4 | opcode, where the operand is the index into
+ *                          the literals for PUSH_INT, into the names for PUSH_SYM and INC, one more
+ *                          than the index into the names of the spelling of a PRINT, and 0 otherwise;
+ *                          INC is followed by the index into the literals of its constant
+ * So operators take one byte, and so do the first 8 names and literals.
+ * Only what running the program needs is kept: a pushed literal loses the spelling it has for a trace.
+ * @author Quang Vo
+ */
+class BinaryProgram {
+	public static final int MAGIC = 0x50464231;		// "PFB1", the start of every binary program
+
+	private static final int OPCODE_BITS = 4;						// low bits of an instruction that hold the opcode
+	private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;	// mask of the opcode
+	private static final int MAX_INDEX = (1 << (32 - OPCODE_BITS)) - 1;	// largest operand of an instruction
+
+	/**
+	 * Load a binary program from a memory-mapped file.
+	 * @param filename the binary file.
+	 * @return the program.
+	 * @throws IOException when the file can't be read or found, or isn't a binary program.
+	 */
+	public static CompiledProgram load(String filename) throws IOException {
+		InterpreterStats stats = InterpreterStats.active();
+		long start = stats != null ? System.nanoTime() : 0;
+		CompiledProgram program;
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE){
+				throw new IOException(filename + " is too large to be a binary program");
+			}
+			program = decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), filename);
+		}
+		if(stats != null){
+			stats.recordLoad(System.nanoTime() - start);
+		}
+		return program;
+	}
+
+	/**
+	 * Decode a binary program.
+	 * @param in the bytes of the program, from its position to its limit.
+	 * @param source where the bytes came from, for error messages.
+	 * @return the program.
+	 * @throws IOException when the bytes aren't a binary program.
+	 */
+	static CompiledProgram decode(ByteBuffer in, String source) throws IOException {
+		try {
+			if(in.remaining() < 4 || in.getInt() != MAGIC){
+				throw new IOException(source + " is not a binary program");
+			}
+			int size = varint(in);
+			int numNames = varint(in);
+			int numLiterals = varint(in);
+			if(size < 0 || numNames < 0 || numLiterals < 0 || size > in.remaining()){ //every instruction takes at least a byte
+				throw damaged(source);
+			}
+
+			String[] names = new String[numNames];
+			for(int i = 0; i < numNames; i++){
+				int length = varint(in);
+				if(length < 0 || length > in.remaining()){
+					throw damaged(source);
+				}
+				byte[] name = new byte[length];
+				in.get(name);
+				names[i] = new String(name, StandardCharsets.UTF_8);
+			}
+			int[] literals = new int[numLiterals];
+			for(int i = 0; i < numLiterals; i++){
+				int z = varint(in);
+				literals[i] = (z >>> 1) ^ -(z & 1);
+			}
+
+			int[] code = new int[size];
+			int[] operands = new int[size];
+			int[] immediates = null; //only made if there is an INC
+			for(int pc = 0; pc < size; pc++){
+				int word = varint(in);
+				int opcode = word & OPCODE_MASK;
+				int operand = word >>> OPCODE_BITS;
+				if(opcode == CompiledProgram.PUSH_INT){
+					if(operand >= numLiterals){
+						throw damaged(source);
+					}
+					operand = literals[operand];
+				}
+				else if(opcode == CompiledProgram.PUSH_SYM || opcode == CompiledProgram.INC){
+					if(operand >= numNames){
+						throw damaged(source);
+					}
+					if(opcode == CompiledProgram.INC){
+						int constant = varint(in);
+						if(constant < 0 || constant >= numLiterals){
+							throw damaged(source);
+						}
+						if(immediates == null){
+							immediates = new int[size];
+						}
+						immediates[pc] = literals[constant];
+					}
+				}
+				else if(opcode == CompiledProgram.PRINT && operand <= numNames){
+					operand--; //-1 unless it prints a literal as it was written
+				}
+				else if(opcode < CompiledProgram.NUM_OPCODES && operand == 0){
+					operand = -1;
+				}
+				else{
+					throw damaged(source);
+				}
+				code[pc] = opcode;
+				operands[pc] = operand;
+			}
+			if(in.hasRemaining()){
+				throw damaged(source);
+			}
+			return new CompiledProgram(code, operands, immediates, names);
+		}
+		catch(BufferUnderflowException e) {
+			throw damaged(source);
+		}
+	}
+
+	/**
+	 * Encode a program in the binary form.
+	 * @param program the program.
+	 * @return the bytes of the binary program.
+	 * @throws IllegalArgumentException if the program has too many names or literals.
+	 */
+	public static byte[] encode(CompiledProgram program) {
+		int size = program.size();
+		SymbolTable<Integer> index = new SymbolTable<>(16); //literal -> position in the pool
+		int[] literals = new int[16];
+		int numLiterals = 0;
+		Output code = new Output(size + size / 2);
+
+		for(int pc = 0; pc < size; pc++){
+			int opcode = program.getOpcode(pc);
+			if(opcode == CompiledProgram.PUSH_INT || opcode == CompiledProgram.INC){
+				int value = opcode == CompiledProgram.PUSH_INT ? program.getOperand(pc) : program.getImmediate(pc);
+				String key = Integer.toString(value);
+				Integer pos = index.get(key);
+				if(pos == null){ //first time the literal is seen
+					if(numLiterals == literals.length){
+						literals = Arrays.copyOf(literals, numLiterals * 2);
+					}
+					pos = numLiterals;
+					literals[numLiterals++] = value;
+					index.put(key, pos);
+				}
+				if(opcode == CompiledProgram.PUSH_INT){
+					code.varint(word(opcode, pos));
+				}
+				else{
+					code.varint(word(opcode, program.getOperand(pc)));
+					code.varint(pos);
+				}
+			}
+			else if(opcode == CompiledProgram.PUSH_SYM){
+				code.varint(word(opcode, program.getOperand(pc)));
+			}
+			else if(opcode == CompiledProgram.PRINT){
+				code.varint(word(opcode, program.getOperand(pc) + 1));
+			}
+			else{
+				code.varint(opcode);
+			}
+		}
+
+		Output out = new Output(code.size + 64);
+		out.u4(MAGIC);
+		out.varint(size);
+		out.varint(program.numNames());
+		out.varint(numLiterals);
+		for(int i = 0; i < program.numNames(); i++){
+			byte[] name = program.getName(i).getBytes(StandardCharsets.UTF_8);
+			out.varint(name.length);
+			out.append(name, name.length);
+		}
+		for(int i = 0; i < numLiterals; i++){
+			out.varint((literals[i] << 1) ^ (literals[i] >> 31)); //zigzag, so small negatives stay short
+		}
+		out.append(code.data, code.size);
+		return Arrays.copyOf(out.data, out.size);
+	}
+
+	/**
+	 * Write a program to a file in the binary form.
+	 * @param program the program.
+	 * @param filename the binary file to write.
+	 * @throws IOException when the file can't be written.
+	 */
+	public static void write(CompiledProgram program, String filename) throws IOException {
+		try (OutputStream out = Files.newOutputStream(Paths.get(filename))) {
+			out.write(encode(program));
+		}
+	}
+
+	/**
+	 * Convert a program file in the text format into a binary program.
+	 * The symbols are read the same way as by fileToNodeQueue, and literals are stored as
+	 * their values, except where CompiledProgram keeps how they were written.
+	 * @param textFile the program file.
+	 * @param binaryFile the binary file to write.
+	 * @return the number of symbols converted.
+	 * @throws IOException when a file can't be read or written.
+	 */
+	public static int convert(String textFile, String binaryFile) throws IOException {
+		CompiledProgram program = CompiledProgram.compileFile(textFile);
+		write(program, binaryFile);
+		return program.size();
+	}
+
+	/**
+	 * Pack an opcode and its operand into one instruction.
+	 * @param opcode the opcode.
+	 * @param operand the index into the names or the literals.
+	 * @return the instruction.
+	 * @throws IllegalArgumentException if the operand doesn't fit.
+	 */
+	private static int word(int opcode, int operand) {
+		if(operand > MAX_INDEX){
+			throw new IllegalArgumentException("More than " + MAX_INDEX + " names or literals");
+		}
+		return operand << OPCODE_BITS | opcode;
+	}
+
+	/**
+	 * Read an unsigned varint.
+	 * @param in the buffer, positioned at the varint.
+	 * @return the value.
+	 * @throws BufferUnderflowException if the buffer ends first.
+	 */
+	private static int varint(ByteBuffer in) {
+		int b = in.get();
+		if(b >= 0){ //one byte, the most common case
+			return b;
+		}
+		int value = b & 0x7f;
+		for(int shift = 7; ; shift += 7){
+			b = in.get();
+			value |= (b & 0x7f) << shift;
+			if(b >= 0 || shift == 28){
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Create the exception for a binary program that can't be decoded.
+	 * @param source where the program came from.
+	 * @return the exception to throw.
+	 */
+	private static IOException damaged(String source) {
+		return new IOException(source + " is a damaged binary program");
+	}
+
+	/**
+	 * A growing array of bytes.
+	 */
+	private static class Output {
+		private byte[] data;	// the bytes
+		private int size;		// number of bytes written
+
+		/**
+		 * Create an empty array.
+		 * @param capacity the number of bytes expected.
+		 */
+		Output(int capacity) {
+			data = new byte[Math.max(16, capacity)];
+		}
+
+		/**
+		 * Append an int, most significant byte first.
+		 * @param v the int.
+		 */
+		void u4(int v) {
+			for(int shift = 24; shift >= 0; shift -= 8){
+				u1(v >>> shift);
+			}
+		}
+
+		/**
+		 * Append an unsigned varint.
+		 * @param v the value.
+		 */
+		void varint(int v) {
+			while((v & ~0x7f) != 0){
+				u1((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			u1(v);
+		}
+
+		/**
+		 * Append some bytes.
+		 * @param bytes the bytes.
+		 * @param length the number of bytes to append.
+		 */
+		void append(byte[] bytes, int length) {
+			ensure(length);
+			System.arraycopy(bytes, 0, data, size, length);
+			size += length;
+		}
+
+		/**
+		 * Append a byte.
+		 * @param b the byte, in the low 8 bits.
+		 */
+		private void u1(int b) {
+			if(size == data.length){
+				ensure(1);
+			}
+			data[size++] = (byte) b;
+		}
+
+		/**
+		 * Make room for more bytes.
+		 * @param length the number of bytes to make room for.
+		 */
+		private void ensure(int length) {
+			if(size + length > data.length){
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+			}
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws IOException {
+		CompiledProgram p1 = CompiledProgram.compile(Benchmarks.toNodes("x 007 = x print y x -20 * = y print 300 x 1 + 5 = 7 print"));
+		byte[] bytes = BinaryProgram.encode(p1);
+		CompiledProgram p2 = decode(ByteBuffer.wrap(bytes), "p1");
+
+		if(p2.toString().equals("x 7 = x print y x -20 * = y print 300 x 1 + 5 = 7 print") && p2.size() == p1.size() && p2.numNames() == 3 && p2.getSpelling(1) == -1) {
+			System.out.println("Yay 1");
+		}
+
+		//magic, 3 counts, names "x", "y" and the spelling "007", literals 7 -20 300 1 5, and one byte per symbol
+		if(bytes.length == 4 + 3 + 4 + 4 + 1 + 1 + 2 + 1 + 1 + p1.size()) {
+			System.out.println("Yay 2");
+		}
+
+		CompiledProgram o1 = Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes("x 1 = x 2 += x -3 += x print")));
+		CompiledProgram o2 = decode(ByteBuffer.wrap(encode(o1)), "o1");
+		if(o2.toString().equals(o1.toString()) && o1.toString().contains("+=")) {
+			System.out.println("Yay 3");
+		}
+
+		int errors = 0;
+		for(int cut = 0; cut < bytes.length; cut++){ //every truncated program is refused
+			try {
+				decode(ByteBuffer.wrap(bytes, 0, cut), "cut");
+			}
+			catch(IOException e) {
+				errors++;
+			}
+		}
+		byte[] bad = bytes.clone();
+		bad[bytes.length - 1] = 15; //no such opcode
+		try {
+			decode(ByteBuffer.wrap(bad), "bad");
+		}
+		catch(IOException e) {
+			if(errors == bytes.length && e.getMessage().equals("bad is a damaged binary program")) {
+				System.out.println("Yay 4");
+			}
+		}
+
+		Path text = Files.createTempFile("program", ".txt");
+		Path binary = Files.createTempFile("program", ".pfb");
+		Files.write(text, "a 2 =\n a print\t b a 3 * =".getBytes(StandardCharsets.US_ASCII));
+		int symbols = convert(text.toString(), binary.toString());
+		Computer c = new Computer();
+		CaptureSink out = new CaptureSink();
+		c.setOutput(out);
+		c.runBinary(binary.toString());
+		if(symbols == 10 && out.getOutput().equals("2" + System.lineSeparator()) && c.symbols.get("b") == 6) {
+			System.out.println("Yay 5");
+		}
+		Files.delete(text);
+		Files.delete(binary);
+	}
+}
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * An output sink that collects lines in a byte buffer and writes the buffer
+ * to a stream only when it is full or flushed.
+ * Integers are formatted straight into the buffer, without making a String.
+ * A sink must only be used by one thread at a time.
+ * @author Quang Vo
+ */
+class BufferedSink implements OutputSink {
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes();	// the end of a line
+	private static final byte[] MIN_VALUE = Integer.toString(Integer.MIN_VALUE).getBytes();	// the one int that can't be negated
+	private static final int MAX_INT_LENGTH = 11;	// "-2147483648"
+
+	private final OutputStream out;	// where the buffer is written
+	private final byte[] buffer;	// the bytes not written yet
+	private int count;				// number of bytes in the buffer
+
+	/**
+	 * Create a sink with a 64 KB buffer.
+	 * @param out where the output is written.
+	 */
+	public BufferedSink(OutputStream out) {
+		this(out, 1 << 16);
+	}
+
+	/**
+	 * Create a sink with the given buffer size.
+	 * @param out where the output is written.
+	 * @param bufferSize the size of the buffer, at least one line of output.
+	 */
+	public BufferedSink(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(bufferSize, MAX_INT_LENGTH + NEWLINE.length)];
+	}
+
+	/**
+	 * Print an integer on its own line.
+	 * @param value the integer.
+	 * @throws UncheckedIOException when the stream can't be written.
+	 */
+	public void println(int value) {
+		if(count + MAX_INT_LENGTH + NEWLINE.length > buffer.length){
+			drain();
+		}
+
+		if(value == Integer.MIN_VALUE){
+			System.arraycopy(MIN_VALUE, 0, buffer, count, MIN_VALUE.length);
+			count += MIN_VALUE.length;
+		}
+		else{
+			if(value < 0){
+				buffer[count++] = '-';
+				value = -value;
+			}
+			int end = count + digits(value);
+			for(int pos = end - 1; pos >= count; pos--){ //write the digits from the right
+				buffer[pos] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			count = end;
+		}
+		newline();
+	}
+
+	/**
+	 * Print a string on its own line.
+	 * @param text the string.
+	 * @throws UncheckedIOException when the stream can't be written.
+	 */
+	public void println(String text) {
+		for(int i = 0; i < text.length(); i++){
+			char c = text.charAt(i);
+			if(c >= 0x80){ //not ASCII, let String do the encoding
+				write(text.getBytes());
+				newline();
+				return;
+			}
+		}
+
+		if(count + text.length() + NEWLINE.length > buffer.length){
+			drain();
+		}
+		if(text.length() + NEWLINE.length > buffer.length){
+			write(text.getBytes());
+		}
+		else{
+			for(int i = 0; i < text.length(); i++){
+				buffer[count++] = (byte) text.charAt(i);
+			}
+		}
+		newline();
+	}
+
+	/**
+	 * Write the buffer and flush the stream.
+	 * @throws UncheckedIOException when the stream can't be written.
+	 */
+	public void flush() {
+		drain();
+		try {
+			out.flush();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of decimal digits of a non-negative integer.
+	 * @param value the integer.
+	 * @return the number of digits.
+	 */
+	private static int digits(int value) {
+		int digits = 1;
+		for(long limit = 10; limit <= value; limit *= 10){
+			digits++;
+		}
+		return digits;
+	}
+
+	/**
+	 * End the current line.
+	 */
+	private void newline() {
+		if(count + NEWLINE.length > buffer.length){
+			drain();
+		}
+		for(byte b : NEWLINE){
+			buffer[count++] = b;
+		}
+	}
+
+	/**
+	 * Write some bytes that don't go through the buffer.
+	 * @param bytes the bytes.
+	 */
+	private void write(byte[] bytes) {
+		drain();
+		try {
+			out.write(bytes);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Write the buffer to the stream and empty it.
+	 */
+	private void drain() {
+		if(count > 0){
+			try {
+				out.write(buffer, 0, count);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			count = 0;
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		String n = System.lineSeparator();
+		CaptureSink s1 = new CaptureSink();
+		s1.println(0);
+		s1.println(-7);
+		s1.println(Integer.MAX_VALUE);
+		s1.println(Integer.MIN_VALUE);
+		s1.println("007");
+
+		if(s1.getOutput().equals("0" + n + "-7" + n + "2147483647" + n + "-2147483648" + n + "007" + n)) {
+			System.out.println("Yay 1");
+		}
+
+		CaptureSink s2 = new CaptureSink(16); //smaller than the output, so it is written in pieces
+		StringBuilder expected = new StringBuilder();
+		for(int i = -1000; i <= 1000; i += 7){
+			s2.println(i);
+			expected.append(i).append(n);
+		}
+
+		if(s2.getOutput().equals(expected.toString())) {
+			System.out.println("Yay 2");
+		}
+
+		OutputSink.NULL.println(5);
+		s2.clear();
+		if(s2.getOutput().equals("")) {
+			System.out.println("Yay 3");
+		}
+	}
+}
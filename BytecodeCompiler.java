@@ -0,0 +1,882 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * Compiles a CompiledProgram into a JVM class, so a program that is run many times
+ * runs as native code once the JIT has compiled the class.
+ * The program has no jumps, so the stack is simulated while compiling, and every item
+ * on it is known to be a literal, an identifier or a computed value. Literals become
+ * constants, computed values become locals, and each variable becomes a local of the
+ * method, loaded from an array when the method starts and written back when it returns.
+ * The operators become iadd, isub, imul and idiv, and INC becomes iinc. An identifier
+ * is still read when it is popped, not when it is pushed, as in the interpreter.
+ * A variable is only checked for a value the first time it is read before it is assigned.
+ * Long programs are split into several methods between statements, where the stack is
+ * empty, so each method stays small enough for the JIT to compile.
+ * The class file is written by hand, since the JDK has no public class file writer,
+ * and is defined as a hidden class, so it is unloaded with the program.
+ * compile() returns null for the programs it can't compile, which have to be interpreted:
+ * an "=" whose key is a computed value, which only has a name when it runs, and
+ * programs too big for the limits of a class file.
+ * @author Quang Vo
+ */
+class BytecodeCompiler {
+
+	private static final int METHOD_SIZE = 4000;	// bytes of code after which a method ends at the next statement
+	private static final int MAX_CODE = 65535;		// the most bytes of code a method can have
+	private static final int MAX_CONSTANTS = 65535;	// the most entries the constant pool can have
+	private static final int MAX_STACK = 3;			// the most the generated code pushes on the JVM stack
+
+	//the kinds of items on the simulated stack
+	private static final int LITERAL = 0;	// an integer literal, its value is known
+	private static final int IDENTIFIER = 1;	// an identifier, read when it is popped
+	private static final int VALUE = 2;		// a computed value, in a local
+
+	//the instructions used
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int IALOAD = 0x2e;
+	private static final int ISTORE = 0x36;
+	private static final int IASTORE = 0x4f;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IMUL = 0x68;
+	private static final int IDIV = 0x6c;
+	private static final int IINC = 0x84;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int INVOKEINTERFACE = 0xb9;
+	private static final int ATHROW = 0xbf;
+	private static final int WIDE = 0xc4;
+
+	//the parameters of each method of a part of the program
+	private static final int VARS = 0;		// int[] the value of each slot
+	private static final int DEFINED = 1;	// boolean[] whether each slot had a value
+	private static final int OUT = 2;		// OutputSink where print statements go
+	private static final String PART_DESCRIPTOR = "([I[ZLOutputSink;)V";
+
+	private final CompiledProgram program;	// the program being compiled
+
+	private String[] names;			// the name of each slot, the program's then the ones assigned through an integer key or ""
+	private int numNames;			// number of slots
+	private IntSymbolTable extraSlots = new IntSymbolTable(4);	// the slot of each name that isn't in the program
+	private boolean[] known;		// whether each slot is known to have a value at this point
+	private boolean[] stored;		// whether the program assigns each slot
+
+	private int[] kinds = new int[16];	// the kind of each item on the stack
+	private int[] items = new int[16];	// the literal, the slot or the local of each item
+	private int depth;					// number of items on the stack
+
+	private Bytes code;				// the code of the method being written, without its start and end
+	private int[] localOf;			// the local of each slot in the method being written, -1 if it has none
+	private boolean[] loadFirst;	// whether each slot with a local is read before it is assigned in the method
+	private boolean[] storedHere;	// whether each slot with a local is assigned in the method
+	private int[] used = new int[16];	// the slots with a local, in order
+	private int numUsed;
+	private int[] tempOf = new int[16];	// the local holding the computed value at each position of the stack, -1 if none
+	private int numLocals;			// number of locals of the method being written
+	private boolean failed;			// whether the rest of the program is never reached, because it throws here
+
+	private Bytes[] parts = new Bytes[4];	// the methods written, each with its code attribute
+	private int numParts;
+
+	private final Bytes pool = new Bytes();	// the constant pool
+	private int poolSize = 1;				// number of constants, 0 is not used
+	private final SymbolTable<Integer> constants = new SymbolTable<>(64);	// the index of each constant
+	private final int checkMethod;		// BytecodeProgram.check()
+	private final int emptyMethod;		// BytecodeProgram.empty()
+	private final int printMethod;		// OutputSink.println(int)
+	private final int printTextMethod;	// OutputSink.println(String)
+
+	/**
+	 * A growable array of bytes, written in the big-endian order of class files.
+	 */
+	private static class Bytes {
+		private byte[] data;	// the bytes
+		private int size;		// number of bytes written
+
+		/**
+		 * Create an empty array of bytes.
+		 */
+		Bytes() {
+			this(256);
+		}
+
+		/**
+		 * Create an empty array of bytes with room for some.
+		 * @param capacity the number of bytes there is room for.
+		 */
+		Bytes(int capacity) {
+			data = new byte[Math.max(capacity, 1)];
+		}
+
+		/**
+		 * Write one byte.
+		 * @param b the byte.
+		 */
+		void u1(int b) {
+			if(size == data.length){
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = (byte) b;
+		}
+
+		/**
+		 * Write two bytes.
+		 * @param v the value.
+		 */
+		void u2(int v) {
+			u1(v >>> 8);
+			u1(v);
+		}
+
+		/**
+		 * Write four bytes.
+		 * @param v the value.
+		 */
+		void u4(int v) {
+			u2(v >>> 16);
+			u2(v);
+		}
+
+		/**
+		 * Write a string in the modified UTF-8 of class files, after its length.
+		 * @param s the string.
+		 */
+		void utf(String s) {
+			Bytes encoded = new Bytes(s.length());
+			for(int i = 0; i < s.length(); i++){
+				char c = s.charAt(i);
+				if(c >= 1 && c < 0x80){
+					encoded.u1(c);
+				}
+				else if(c < 0x800){ //including the character 0, which takes two bytes
+					encoded.u1(0xc0 | c >> 6);
+					encoded.u1(0x80 | c & 0x3f);
+				}
+				else{
+					encoded.u1(0xe0 | c >> 12);
+					encoded.u1(0x80 | c >> 6 & 0x3f);
+					encoded.u1(0x80 | c & 0x3f);
+				}
+			}
+			u2(encoded.size);
+			append(encoded);
+		}
+
+		/**
+		 * Write everything written to other bytes.
+		 * @param other the other bytes.
+		 */
+		void append(Bytes other) {
+			if(size + other.size > data.length){
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + other.size));
+			}
+			System.arraycopy(other.data, 0, data, size, other.size);
+			size += other.size;
+		}
+
+		/**
+		 * Return the bytes written.
+		 * @return a copy of the bytes.
+		 */
+		byte[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/**
+	 * Create a compiler for a program.
+	 * @param program the program.
+	 */
+	private BytecodeCompiler(CompiledProgram program) {
+		this.program = program;
+		numNames = program.numNames();
+		names = new String[Math.max(numNames, 4)];
+		for(int i = 0; i < numNames; i++){
+			names[i] = program.getName(i);
+		}
+		known = new boolean[names.length];
+		stored = new boolean[names.length];
+		localOf = new int[names.length];
+		loadFirst = new boolean[names.length];
+		storedHere = new boolean[names.length];
+		Arrays.fill(localOf, -1);
+
+		checkMethod = method("BytecodeProgram", "check", "([ZILjava/lang/String;)V");
+		emptyMethod = method("BytecodeProgram", "empty", "()Ljava/lang/NullPointerException;");
+		printMethod = interfaceMethod("OutputSink", "println", "(I)V");
+		printTextMethod = interfaceMethod("OutputSink", "println", "(Ljava/lang/String;)V");
+	}
+
+	/**
+	 * Compile a program into a class and load it.
+	 * @param program the program, optimized or not.
+	 * @return the compiled program, or null if it has to be interpreted.
+	 */
+	public static BytecodeProgram compile(CompiledProgram program) {
+		BytecodeCompiler compiler = new BytecodeCompiler(program);
+		byte[] classFile = compiler.compileAll();
+		if(classFile == null){
+			return null;
+		}
+
+		BytecodeProgram.Body body;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			body = (BytecodeProgram.Body) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		}
+		catch(Throwable e) { //the class is invalid, which is a bug here
+			throw new IllegalStateException("The compiled program can't be loaded", e);
+		}
+
+		int[] stores = new int[compiler.numNames];
+		int numStores = 0;
+		for(int slot = 0; slot < compiler.numNames; slot++){
+			if(compiler.stored[slot]){
+				stores[numStores++] = slot;
+			}
+		}
+		return new BytecodeProgram(body, Arrays.copyOf(compiler.names, compiler.numNames), Arrays.copyOf(stores, numStores), program);
+	}
+
+	/**
+	 * Compile every opcode of the program and write the class file.
+	 * @return the class file, or null if the program has to be interpreted.
+	 */
+	private byte[] compileAll() {
+		startPart();
+		for(int pc = 0; pc < program.size() && !failed; pc++){
+			if(depth == 0 && code.size >= METHOD_SIZE && !endPart()){
+				return null;
+			}
+			int opcode = program.getOpcode(pc);
+			int operand = program.getOperand(pc);
+
+			switch(opcode){
+				case CompiledProgram.PUSH_INT:
+					push(LITERAL, operand);
+					break;
+				case CompiledProgram.PUSH_SYM:
+					push(IDENTIFIER, operand);
+					break;
+				case CompiledProgram.ADD:
+				case CompiledProgram.SUB:
+				case CompiledProgram.MUL:
+				case CompiledProgram.DIV:
+					if(popValue() && popValue()){
+						load(depth);
+						load(depth + 1);
+						code.u1(operator(opcode));
+						int temp = temp(depth);
+						localInstruction(code, ISTORE, temp);
+						push(VALUE, temp);
+					}
+					break;
+				case CompiledProgram.ASSIGN:
+					if(popValue() && popItem()){
+						int key;
+						if(kinds[depth] == IDENTIFIER){
+							key = items[depth];
+						}
+						else if(kinds[depth] == LITERAL){
+							key = extraSlot(Integer.toString(items[depth])); //Computer.process() uses the integer as the name
+						}
+						else{
+							return null; //the name is only known when it runs
+						}
+						load(depth + 1);
+						assign(key);
+					}
+					break;
+				case CompiledProgram.ADD_ASSIGN:
+				case CompiledProgram.SUB_ASSIGN:
+				case CompiledProgram.MUL_ASSIGN:
+				case CompiledProgram.DIV_ASSIGN:
+					if(popValue() && popValue()){ //each is checked as it is popped, the same order of errors as the interpreter
+						int key; //the last identifier popped is the one that gets assigned
+						if(kinds[depth] == IDENTIFIER){
+							key = items[depth];
+						}
+						else if(kinds[depth + 1] == IDENTIFIER){
+							key = items[depth + 1];
+						}
+						else{
+							key = extraSlot(""); //Computer.process() stores it under the empty key
+						}
+						load(depth);
+						load(depth + 1);
+						code.u1(operator(opcode - CompiledProgram.ADD_ASSIGN + CompiledProgram.ADD));
+						assign(key);
+					}
+					break;
+				case CompiledProgram.PRINT:
+					if(popValue()){
+						code.u1(ALOAD_0 + OUT);
+						if(operand == -1){
+							load(depth);
+						}
+						else{
+							ldc(code, string(names[operand])); //a literal, as it was written
+						}
+						code.u1(INVOKEINTERFACE);
+						code.u2(operand == -1 ? printMethod : printTextMethod);
+						code.u1(2); //the arguments, with the sink
+						code.u1(0);
+					}
+					break;
+				case CompiledProgram.INC:
+					checkSlot(operand);
+					increment(operand, program.getImmediate(pc));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown opcode " + opcode);
+			}
+		}
+		if(!endPart()){
+			return null;
+		}
+		return writeClass();
+	}
+
+	/**
+	 * Push an item on the simulated stack.
+	 * @param kind LITERAL, IDENTIFIER or VALUE.
+	 * @param item the literal, the slot or the local.
+	 */
+	private void push(int kind, int item) {
+		if(depth == kinds.length){
+			kinds = Arrays.copyOf(kinds, depth * 2);
+			items = Arrays.copyOf(items, depth * 2);
+		}
+		kinds[depth] = kind;
+		items[depth] = item;
+		depth++;
+	}
+
+	/**
+	 * Pop an item off the simulated stack, or throw if the stack runs out.
+	 * The item stays at index depth until something else is pushed.
+	 * @return true if there was an item, false if the program throws here.
+	 */
+	private boolean popItem() {
+		if(depth == 0){
+			code.u1(INVOKESTATIC);
+			code.u2(emptyMethod);
+			code.u1(ATHROW);
+			failed = true; //nothing after this runs
+			return false;
+		}
+		depth--;
+		return true;
+	}
+
+	/**
+	 * Pop an item off the simulated stack to use its value, checking it has one.
+	 * @return true if there was an item, false if the program throws here.
+	 */
+	private boolean popValue() {
+		return popItem() && check(depth);
+	}
+
+	/**
+	 * Check that an identifier has a value, if that isn't known yet.
+	 * @param index the position of the item on the stack.
+	 * @return true.
+	 */
+	private boolean check(int index) {
+		if(kinds[index] == IDENTIFIER){
+			checkSlot(items[index]);
+		}
+		return true;
+	}
+
+	/**
+	 * Check that a variable has a value, if that isn't known yet.
+	 * @param slot the slot of the variable.
+	 */
+	private void checkSlot(int slot) {
+		if(!known[slot]){
+			code.u1(ALOAD_0 + DEFINED);
+			pushInt(code, slot);
+			ldc(code, string(names[slot]));
+			code.u1(INVOKESTATIC);
+			code.u2(checkMethod);
+			known[slot] = true; //the code after the check only runs if it has one
+		}
+	}
+
+	/**
+	 * Push the value of an item of the simulated stack on the JVM stack.
+	 * An identifier is read now, so it has the value it has when it is popped.
+	 * @param index the position of the item.
+	 */
+	private void load(int index) {
+		int item = items[index];
+		switch(kinds[index]){
+			case LITERAL:
+				pushInt(code, item);
+				break;
+			case IDENTIFIER:
+				localInstruction(code, ILOAD, local(item, true));
+				break;
+			default:
+				localInstruction(code, ILOAD, item);
+				break;
+		}
+	}
+
+	/**
+	 * Assign the value on the JVM stack to a variable.
+	 * @param slot the slot of the variable.
+	 */
+	private void assign(int slot) {
+		localInstruction(code, ISTORE, local(slot, false));
+		known[slot] = true;
+		stored[slot] = true;
+		storedHere[slot] = true;
+	}
+
+	/**
+	 * Add a constant to a variable with iinc.
+	 * @param slot the slot of the variable.
+	 * @param constant the constant.
+	 */
+	private void increment(int slot, int constant) {
+		int local = local(slot, true);
+		if(local <= 0xff && constant >= Byte.MIN_VALUE && constant <= Byte.MAX_VALUE){
+			code.u1(IINC);
+			code.u1(local);
+			code.u1(constant);
+		}
+		else if(constant >= Short.MIN_VALUE && constant <= Short.MAX_VALUE){
+			code.u1(WIDE);
+			code.u1(IINC);
+			code.u2(local);
+			code.u2(constant);
+		}
+		else{
+			localInstruction(code, ILOAD, local);
+			pushInt(code, constant);
+			code.u1(IADD);
+			localInstruction(code, ISTORE, local);
+		}
+		stored[slot] = true;
+		storedHere[slot] = true;
+	}
+
+	/**
+	 * Return the instruction for an operator.
+	 * @param opcode ADD, SUB, MUL or DIV.
+	 * @return iadd, isub, imul or idiv.
+	 */
+	private static int operator(int opcode) {
+		switch(opcode){
+			case CompiledProgram.ADD: return IADD;
+			case CompiledProgram.SUB: return ISUB;
+			case CompiledProgram.MUL: return IMUL;
+			default: return IDIV; //throws ArithmeticException for a zero, as the interpreter does
+		}
+	}
+
+	/**
+	 * Return the slot of a name that can't appear in the program, adding it if it is new.
+	 * @param name the name.
+	 * @return the slot.
+	 */
+	private int extraSlot(String name) {
+		if(extraSlots.containsKey(name)){
+			return extraSlots.get(name);
+		}
+		if(numNames == names.length){
+			int capacity = numNames * 2;
+			names = Arrays.copyOf(names, capacity);
+			known = Arrays.copyOf(known, capacity);
+			stored = Arrays.copyOf(stored, capacity);
+			loadFirst = Arrays.copyOf(loadFirst, capacity);
+			storedHere = Arrays.copyOf(storedHere, capacity);
+			localOf = Arrays.copyOf(localOf, capacity);
+			Arrays.fill(localOf, numNames, capacity, -1);
+		}
+		names[numNames] = name;
+		extraSlots.put(name, numNames);
+		return numNames++;
+	}
+
+	/**
+	 * Return the local of a variable in the method being written, giving it one if it has none.
+	 * @param slot the slot of the variable.
+	 * @param read whether the variable is being read.
+	 * @return the local.
+	 */
+	private int local(int slot, boolean read) {
+		if(localOf[slot] == -1){
+			localOf[slot] = numLocals++;
+			loadFirst[slot] = read; //the method starts by loading it from the array
+			if(numUsed == used.length){
+				used = Arrays.copyOf(used, numUsed * 2);
+			}
+			used[numUsed++] = slot;
+		}
+		return localOf[slot];
+	}
+
+	/**
+	 * Return the local that holds a computed value at a position of the stack, giving it one if it has none.
+	 * @param index the position.
+	 * @return the local.
+	 */
+	private int temp(int index) {
+		if(index >= tempOf.length){
+			int old = tempOf.length;
+			tempOf = Arrays.copyOf(tempOf, Math.max(old * 2, index + 1));
+			Arrays.fill(tempOf, old, tempOf.length, -1);
+		}
+		if(tempOf[index] == -1){
+			tempOf[index] = numLocals++;
+		}
+		return tempOf[index];
+	}
+
+	/**
+	 * Start writing a method.
+	 */
+	private void startPart() {
+		code = new Bytes();
+		for(int i = 0; i < numUsed; i++){
+			localOf[used[i]] = -1;
+			loadFirst[used[i]] = false;
+			storedHere[used[i]] = false;
+		}
+		numUsed = 0;
+		Arrays.fill(tempOf, -1);
+		numLocals = 3; //the parameters
+	}
+
+	/**
+	 * Finish the method being written, and start another one.
+	 * The method loads the variables it reads first, and writes back the ones it assigns.
+	 * @return true, or false if the method is too big.
+	 */
+	private boolean endPart() {
+		Bytes body = new Bytes();
+		for(int i = 0; i < numUsed; i++){
+			int slot = used[i];
+			if(loadFirst[slot]){
+				body.u1(ALOAD_0 + VARS);
+				pushInt(body, slot);
+				body.u1(IALOAD);
+				localInstruction(body, ISTORE, localOf[slot]);
+			}
+		}
+		body.append(code);
+		if(!failed){ //nothing is written back when it throws
+			for(int i = 0; i < numUsed; i++){
+				int slot = used[i];
+				if(storedHere[slot]){
+					body.u1(ALOAD_0 + VARS);
+					pushInt(body, slot);
+					localInstruction(body, ILOAD, localOf[slot]);
+					body.u1(IASTORE);
+				}
+			}
+			body.u1(RETURN);
+		}
+		if(body.size > MAX_CODE || numLocals > 0xffff || poolSize > MAX_CONSTANTS - 16){
+			return false;
+		}
+
+		if(numParts == parts.length){
+			parts = Arrays.copyOf(parts, numParts * 2);
+		}
+		parts[numParts] = methodInfo(0x000a, "part" + numParts, PART_DESCRIPTOR, body, numLocals); //private static
+		numParts++;
+		startPart();
+		return true;
+	}
+
+	/**
+	 * Write a method with its code attribute.
+	 * @param access the access flags.
+	 * @param name the name.
+	 * @param descriptor the descriptor.
+	 * @param body the code.
+	 * @param maxLocals the number of locals, with the parameters.
+	 * @return the method.
+	 */
+	private Bytes methodInfo(int access, String name, String descriptor, Bytes body, int maxLocals) {
+		Bytes method = new Bytes();
+		method.u2(access);
+		method.u2(utf8(name));
+		method.u2(utf8(descriptor));
+		method.u2(1); //the code attribute
+		method.u2(utf8("Code"));
+		method.u4(12 + body.size);
+		method.u2(MAX_STACK);
+		method.u2(maxLocals);
+		method.u4(body.size);
+		method.append(body);
+		method.u2(0); //no exception handlers
+		method.u2(0); //no attributes
+		return method;
+	}
+
+	/**
+	 * Write the class, with a constructor and a run method that calls every part in order.
+	 * @return the class file, or null if it is too big.
+	 */
+	private byte[] writeClass() {
+		Bytes init = new Bytes();
+		init.u1(ALOAD_0);
+		init.u1(INVOKESPECIAL);
+		init.u2(method("java/lang/Object", "<init>", "()V"));
+		init.u1(RETURN);
+
+		Bytes run = new Bytes();
+		for(int i = 0; i < numParts; i++){
+			run.u1(ALOAD_0 + 1);
+			run.u1(ALOAD_0 + 2);
+			run.u1(ALOAD_0 + 3);
+			run.u1(INVOKESTATIC);
+			run.u2(method("PostfixProgram", "part" + i, PART_DESCRIPTOR));
+		}
+		run.u1(RETURN);
+		if(run.size > MAX_CODE){
+			return null;
+		}
+
+		Bytes[] methods = {
+			methodInfo(0x0001, "<init>", "()V", init, 1), //public
+			methodInfo(0x0001, "run", PART_DESCRIPTOR, run, 4),
+		};
+		int thisClass = classRef("PostfixProgram");
+		int superClass = classRef("java/lang/Object");
+		int body = classRef("BytecodeProgram$Body");
+		if(poolSize > MAX_CONSTANTS){
+			return null;
+		}
+
+		Bytes file = new Bytes();
+		file.u4(0xcafebabe);
+		file.u2(0); //minor version
+		file.u2(52); //Java 8, the code has no jumps so it needs no stack map frames
+		file.u2(poolSize);
+		file.append(pool);
+		file.u2(0x0030); //final, super
+		file.u2(thisClass);
+		file.u2(superClass);
+		file.u2(1);
+		file.u2(body);
+		file.u2(0); //no fields
+		file.u2(methods.length + numParts);
+		for(Bytes method : methods){
+			file.append(method);
+		}
+		for(int i = 0; i < numParts; i++){
+			file.append(parts[i]);
+		}
+		file.u2(0); //no attributes
+		return file.toArray();
+	}
+
+	/**
+	 * Write the shortest instruction that pushes an integer.
+	 * @param out the code.
+	 * @param value the integer.
+	 */
+	private void pushInt(Bytes out, int value) {
+		if(value >= -1 && value <= 5){
+			out.u1(ICONST_0 + value);
+		}
+		else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+			out.u1(BIPUSH);
+			out.u1(value);
+		}
+		else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+			out.u1(SIPUSH);
+			out.u2(value);
+		}
+		else{
+			ldc(out, integer(value));
+		}
+	}
+
+	/**
+	 * Write an instruction that pushes a constant of the pool.
+	 * @param out the code.
+	 * @param index the index of the constant.
+	 */
+	private static void ldc(Bytes out, int index) {
+		if(index <= 0xff){
+			out.u1(LDC);
+			out.u1(index);
+		}
+		else{
+			out.u1(LDC_W);
+			out.u2(index);
+		}
+	}
+
+	/**
+	 * Write the shortest form of iload or istore.
+	 * @param out the code.
+	 * @param opcode ILOAD or ISTORE.
+	 * @param local the local.
+	 */
+	private static void localInstruction(Bytes out, int opcode, int local) {
+		if(local <= 3){
+			out.u1((opcode == ILOAD ? 0x1a : 0x3b) + local); //iload_0 or istore_0 and after
+		}
+		else if(local <= 0xff){
+			out.u1(opcode);
+			out.u1(local);
+		}
+		else{
+			out.u1(WIDE);
+			out.u1(opcode);
+			out.u2(local);
+		}
+	}
+
+	/**
+	 * Add a constant to the pool.
+	 * @param key a key unique to the constant.
+	 * @param entry the constant as written in the pool.
+	 * @return the index.
+	 */
+	private int add(String key, Bytes entry) {
+		int index = poolSize++;
+		pool.append(entry);
+		constants.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Return the index of a string of the pool, for names and descriptors.
+	 * @param s the string.
+	 * @return the index.
+	 */
+	private int utf8(String s) {
+		String key = "U" + s;
+		Integer index = constants.get(key);
+		if(index != null){
+			return index;
+		}
+		Bytes entry = new Bytes(s.length() + 3);
+		entry.u1(1);
+		entry.utf(s);
+		return add(key, entry);
+	}
+
+	/**
+	 * Return the index of a String constant.
+	 * @param s the string.
+	 * @return the index.
+	 */
+	private int string(String s) {
+		String key = "S" + s;
+		Integer index = constants.get(key);
+		if(index != null){
+			return index;
+		}
+		Bytes entry = new Bytes(3);
+		entry.u1(8);
+		entry.u2(utf8(s));
+		return add(key, entry);
+	}
+
+	/**
+	 * Return the index of an int constant.
+	 * @param value the int.
+	 * @return the index.
+	 */
+	private int integer(int value) {
+		String key = "I" + value;
+		Integer index = constants.get(key);
+		if(index != null){
+			return index;
+		}
+		Bytes entry = new Bytes(5);
+		entry.u1(3);
+		entry.u4(value);
+		return add(key, entry);
+	}
+
+	/**
+	 * Return the index of a class.
+	 * @param name the internal name of the class.
+	 * @return the index.
+	 */
+	private int classRef(String name) {
+		String key = "C" + name;
+		Integer index = constants.get(key);
+		if(index != null){
+			return index;
+		}
+		Bytes entry = new Bytes(3);
+		entry.u1(7);
+		entry.u2(utf8(name));
+		return add(key, entry);
+	}
+
+	/**
+	 * Return the index of a method of a class.
+	 * @param owner the internal name of the class.
+	 * @param name the name of the method.
+	 * @param descriptor the descriptor of the method.
+	 * @return the index.
+	 */
+	private int method(String owner, String name, String descriptor) {
+		return member(10, owner, name, descriptor);
+	}
+
+	/**
+	 * Return the index of a method of an interface.
+	 * @param owner the internal name of the interface.
+	 * @param name the name of the method.
+	 * @param descriptor the descriptor of the method.
+	 * @return the index.
+	 */
+	private int interfaceMethod(String owner, String name, String descriptor) {
+		return member(11, owner, name, descriptor);
+	}
+
+	/**
+	 * Return the index of a method.
+	 * @param tag 10 for a class, 11 for an interface.
+	 * @param owner the internal name of the class or interface.
+	 * @param name the name of the method.
+	 * @param descriptor the descriptor of the method.
+	 * @return the index.
+	 */
+	private int member(int tag, String owner, String name, String descriptor) {
+		String key = "M" + tag + owner + "." + name + descriptor;
+		Integer index = constants.get(key);
+		if(index != null){
+			return index;
+		}
+		String typeKey = "N" + name + " " + descriptor;
+		Integer type = constants.get(typeKey);
+		if(type == null){
+			Bytes nameAndType = new Bytes(5);
+			nameAndType.u1(12);
+			nameAndType.u2(utf8(name));
+			nameAndType.u2(utf8(descriptor));
+			type = add(typeKey, nameAndType);
+		}
+
+		Bytes entry = new Bytes(5);
+		entry.u1(tag);
+		entry.u2(classRef(owner));
+		entry.u2(type);
+		return add(key, entry);
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * A program compiled by BytecodeCompiler into a JVM class, ready to be run many times.
+ * Each run copies the variables the program uses out of the symbols of the computer,
+ * runs the whole program as one call of the generated class, and copies the variables
+ * it assigned back. Nothing is visible in between: the symbols are only updated when
+ * the program finishes or fails, as with ProgramExecutor.
+ * Use the interpreter when the state has to be seen step by step, as in the debug mode,
+ * traces, statistics, or when variables are shared through globals.
+ * @author Quang Vo
+ */
+class BytecodeProgram {
+
+	/**
+	 * The code of the generated class.
+	 */
+	interface Body {
+		/**
+		 * Run the whole program.
+		 * @param vars the value of each slot, updated for the slots the program assigns.
+		 * @param defined whether each slot had a value when the program started.
+		 * @param out where print statements go.
+		 */
+		void run(int[] vars, boolean[] defined, OutputSink out);
+	}
+
+	private final Body body;			// the generated code
+	private final String[] names;		// the name of each slot
+	private final int[] stores;		// the slots the program assigns, in order
+	private final CompiledProgram program;	// the program it was compiled from
+
+	/**
+	 * Create a program from the code generated for it.
+	 * @param body the generated code.
+	 * @param names the name of each slot.
+	 * @param stores the slots the program assigns.
+	 * @param program the program it was compiled from.
+	 */
+	BytecodeProgram(Body body, String[] names, int[] stores, CompiledProgram program) {
+		this.body = body;
+		this.names = names;
+		this.stores = stores;
+		this.program = program;
+	}
+
+	/**
+	 * Run the whole program on a computer.
+	 * Variables that already have a value in the symbols of the computer start with that value,
+	 * and print statements go to the output sink of the computer, which is flushed at the end, also when it fails.
+	 * @param computer the computer whose symbols are updated.
+	 * @throws IllegalArgumentException if the computer shares variables through globals.
+	 * @throws NullPointerException if the stack runs out or an identifier has no value.
+	 */
+	public void run(Computer computer) {
+		if(computer.getGlobals() != null){
+			throw new IllegalArgumentException("Shared variables need ProgramExecutor");
+		}
+		IntSymbolTable symbols = computer.symbols;
+		int[] vars = new int[names.length];
+		boolean[] defined = new boolean[names.length];
+		for(int i = 0; i < names.length; i++){
+			if(symbols.containsKey(names[i])){
+				vars[i] = symbols.get(names[i]);
+				defined[i] = true;
+			}
+		}
+
+		OutputSink out = computer.getOutput();
+		try {
+			body.run(vars, defined, out);
+		}
+		catch(RuntimeException e) {
+			out.flush(); //the lines printed before it failed
+			replay(computer);
+			throw e;
+		}
+
+		for(int slot : stores){
+			symbols.put(names[slot], vars[slot]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Return the number of symbols of the program.
+	 * @return the number of symbols.
+	 */
+	public int size() {
+		return program.size();
+	}
+
+	/**
+	 * Leave the symbols of a computer as they were when the program failed.
+	 * The generated code keeps the variables in locals, which are lost when it throws,
+	 * so the program is run again in ProgramExecutor, from the same symbols and without
+	 * output. It fails at the same symbol and publishes what was assigned before it.
+	 * @param computer the computer the program failed on.
+	 */
+	private void replay(Computer computer) {
+		ProgramExecutor executor = new ProgramExecutor(program, computer);
+		executor.setOutput(OutputSink.NULL);
+		try {
+			executor.process(program.size());
+		}
+		catch(RuntimeException e) {
+			//expected, the variables were published before it was thrown
+		}
+	}
+
+	/**
+	 * Called by the generated code the first time a variable is read before it is assigned.
+	 * @param defined whether each slot had a value when the program started.
+	 * @param slot the slot being read.
+	 * @param name the name of the variable.
+	 * @throws NullPointerException if the variable has no value.
+	 */
+	static void check(boolean[] defined, int slot, String name) {
+		if(!defined[slot]){
+			throw new NullPointerException("Undefined symbol " + name);
+		}
+	}
+
+	/**
+	 * Called by the generated code where the stack runs out, which is known when it is compiled.
+	 * @return the exception to throw, the same as ValueStack's.
+	 */
+	static NullPointerException empty() {
+		return new NullPointerException("No more items");
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		BytecodeProgram p1 = BytecodeCompiler.compile(CompiledProgram.compile(Benchmarks.toNodes("x 5 = y x = x 1 += y x *= x print y 2 + print 3 4 + print 5 2 = z 1 = z 1 2 + +=")));
+		Computer c1 = new Computer();
+		CaptureSink out = new CaptureSink();
+		c1.setOutput(out);
+		p1.run(c1);
+		String n = System.lineSeparator();
+
+		if(out.getOutput().equals("6" + n + "32" + n + "7" + n) && c1.symbols.get("x") == 6 && c1.symbols.get("y") == 30 && c1.symbols.get("5") == 2 && c1.symbols.get("z") == 4) {
+			System.out.println("Yay 1");
+		}
+
+		BytecodeProgram counter = BytecodeCompiler.compile(CompiledProgram.compile(Benchmarks.toNodes("c 1 += c print")));
+		out.clear();
+		c1.symbols.put("c", 10);
+		counter.run(c1);
+		counter.run(c1); //the same program again, from the state it left
+
+		if(out.getOutput().equals("11" + n + "12" + n) && c1.symbols.get("c") == 12) {
+			System.out.println("Yay 2");
+		}
+
+		BytecodeProgram p2 = BytecodeCompiler.compile(CompiledProgram.compile(Benchmarks.toNodes("x 1 = x print z print")));
+		Computer c2 = new Computer();
+		CaptureSink out2 = new CaptureSink();
+		c2.setOutput(out2);
+		try {
+			p2.run(c2);
+		}
+		catch(NullPointerException e) {
+			out2.flush();
+			if(e.getMessage().equals("Undefined symbol z") && out2.getOutput().equals("1" + n) && c2.symbols.get("x") == 1) {
+				System.out.println("Yay 3");
+			}
+		}
+
+		try {
+			BytecodeCompiler.compile(CompiledProgram.compile(Benchmarks.toNodes("4 5 = print"))).run(new Computer());
+		}
+		catch(NullPointerException e) {
+			if(e.getMessage().equals("No more items")) {
+				System.out.println("Yay 4");
+			}
+		}
+
+		if(BytecodeCompiler.compile(CompiledProgram.compile(Benchmarks.toNodes("1 2 + 5 ="))) == null) { //the key is only known when it runs
+			System.out.println("Yay 5");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+import java.io.ByteArrayOutputStream;
+
+/**
+ * An output sink that keeps everything printed in memory, for tests and for
+ * collecting the output of a program before showing it.
+ * @author Quang Vo
+ */
+class CaptureSink extends BufferedSink {
+	private final ByteArrayOutputStream bytes;	// everything written so far
+
+	/**
+	 * Create an empty capture.
+	 */
+	public CaptureSink() {
+		this(new ByteArrayOutputStream(), 1 << 12);
+	}
+
+	/**
+	 * Create an empty capture with the given buffer size.
+	 * @param bufferSize the size of the buffer.
+	 */
+	public CaptureSink(int bufferSize) {
+		this(new ByteArrayOutputStream(), bufferSize);
+	}
+
+	/**
+	 * Create a capture that writes to the given stream.
+	 * @param bytes where the output is kept.
+	 * @param bufferSize the size of the buffer.
+	 */
+	private CaptureSink(ByteArrayOutputStream bytes, int bufferSize) {
+		super(bytes, bufferSize);
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Return everything printed so far.
+	 * @return the bytes printed.
+	 */
+	public byte[] toByteArray() {
+		flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Return everything printed so far as a string.
+	 * @return the output.
+	 */
+	public String getOutput() {
+		flush();
+		return bytes.toString();
+	}
+
+	/**
+	 * Throw away everything printed so far.
+	 */
+	public void clear() {
+		flush();
+		bytes.reset();
+	}
+}
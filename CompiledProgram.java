@@ -0,0 +1,468 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A postfix program compiled from a queue of nodes into an opcode array.
+ * Every symbol of the program becomes one opcode. Integer literals are stored
+ * as the operand of their opcode, and identifiers are kept in a name table so
+ * the same name is stored only once.
+ * Literals are stored as their values. Computer.process() keeps them as strings, which
+ * only shows where a literal is printed or is the key of an "=", so a literal that is
+ * not written the way Integer.toString() writes it, like "007", keeps its spelling there:
+ * a PRINT of it has the spelling in the name table as its operand, and as a key it is
+ * pushed as an identifier with the spelling as its name. Any other push of it keeps the
+ * spelling as its immediate, so a trace can show the literal as written.
+ * The Optimizer can rewrite a program so that it has fewer opcodes than symbols.
+ * @author Quang Vo
+ */
+class CompiledProgram {
+
+	public static final int PUSH_INT = 0;	// push an integer literal onto the stack
+	public static final int PUSH_SYM = 1;	// push a reference to an identifier onto the stack
+	public static final int ADD = 2;		// "+"
+	public static final int SUB = 3;		// "-"
+	public static final int MUL = 4;		// "*"
+	public static final int DIV = 5;		// "/"
+	public static final int ASSIGN = 6;		// "="
+	public static final int ADD_ASSIGN = 7;	// "+="
+	public static final int SUB_ASSIGN = 8;	// "-="
+	public static final int MUL_ASSIGN = 9;	// "*="
+	public static final int DIV_ASSIGN = 10;	// "/="
+	public static final int PRINT = 11;		// "print"
+	public static final int INC = 12;		// "x c +=" as one opcode, only made by the Optimizer
+
+	public static final int NUM_OPCODES = 13;	// number of opcodes
+
+	private final int[] code;  		// one opcode per symbol
+	private final int[] operands;		// the literal for PUSH_INT, index into names for PUSH_SYM and INC, and for a PRINT of a respelled literal, -1 otherwise
+	private final int[] immediates;	// the constant added by INC, and for PUSH_INT one more than the index of its spelling, null if there are neither
+	private final String[] names;		// the distinct identifiers of the program
+
+	/**
+	 * Create a compiled program from its opcode and operand tables.
+	 * @param code the opcodes.
+	 * @param operands the operand of each opcode.
+	 * @param names the distinct identifiers.
+	 */
+	private CompiledProgram(int[] code, int[] operands, String[] names) {
+		this(code, operands, null, names);
+	}
+
+	/**
+	 * Create a compiled program that may have opcodes with a second operand.
+	 * @param code the opcodes.
+	 * @param operands the operand of each opcode.
+	 * @param immediates the constant of each INC, or null if there is none.
+	 * @param names the distinct identifiers.
+	 */
+	CompiledProgram(int[] code, int[] operands, int[] immediates, String[] names) {
+		this.code = code;
+		this.operands = operands;
+		this.immediates = immediates;
+		this.names = names;
+	}
+
+	/**
+	 * Compile a queue of nodes into a program.
+	 * Each symbol is classified only once, here, instead of every time it is processed.
+	 * @param input the front of the queue of nodes with symbols.
+	 * @return the compiled program.
+	 */
+	public static CompiledProgram compile(Node<String> input) {
+		Builder builder = new Builder();
+		for(Node<String> current = input; current != null; current = current.getNext()){
+			builder.add(new Token(current.getValue()));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Compile a program file straight from a memory-mapped buffer, without building a queue of nodes.
+	 * @param filename the file to be opened.
+	 * @return the compiled program.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public static CompiledProgram compileFile(String filename) throws IOException {
+		InterpreterStats stats = InterpreterStats.active();
+		long start = stats != null ? System.nanoTime() : 0;
+		Builder builder = new Builder();
+		MappedTokenizer tokenizer = new MappedTokenizer(filename);
+		try {
+			while(tokenizer.next()){
+				int opcode = tokenizer.opcode();
+				if(opcode == PUSH_INT && tokenizer.isCanonical()){
+					builder.addLiteral(tokenizer.value());
+				}
+				else if(opcode == PUSH_INT){
+					builder.addLiteral(tokenizer.value(), tokenizer.text());
+				}
+				else if(opcode == PUSH_SYM){
+					builder.addIdentifier(tokenizer.text());
+				}
+				else{
+					builder.addOperator(opcode);
+				}
+			}
+		}
+		finally {
+			tokenizer.close();
+		}
+		CompiledProgram program = builder.build();
+		if(stats != null){
+			stats.recordLoad(System.nanoTime() - start);
+		}
+		return program;
+	}
+
+	/**
+	 * Apply an arithmetic or compound assignment operator.
+	 * @param opcode the CompiledProgram opcode of the operator.
+	 * @param left the left operand.
+	 * @param right the right operand.
+	 * @return the result.
+	 */
+	static int apply(int opcode, int left, int right) {
+		switch(opcode){
+			case CompiledProgram.ADD:
+			case CompiledProgram.ADD_ASSIGN: return left + right;
+			case CompiledProgram.SUB:
+			case CompiledProgram.SUB_ASSIGN: return left - right;
+			case CompiledProgram.MUL:
+			case CompiledProgram.MUL_ASSIGN: return left * right;
+			case CompiledProgram.DIV:
+			case CompiledProgram.DIV_ASSIGN: return left / right;
+			default: throw new IllegalArgumentException("Not an arithmetic operator: " + opcode);
+		}
+	}
+
+	/**
+	 * Collects opcodes one symbol at a time and builds the program.
+	 */
+	static class Builder {
+		private int[] code = new int[64];		// opcodes added so far
+		private int[] operands = new int[64];	// operands added so far
+		private int size = 0;					// number of opcodes added
+		private String[] names = new String[8];	// identifiers seen so far
+		private int numNames = 0;				// number of identifiers seen
+		private SymbolTable<Integer> index = new SymbolTable<>(16); //identifier -> position in names
+		private String[] spellings = null;		// how each literal was written if not as Integer.toString(), null if all were
+
+		/**
+		 * Add a classified token.
+		 * @param token the token.
+		 */
+		public void add(Token token) {
+			if(token.getOpcode() == PUSH_INT && Token.isCanonical(token.getText())){
+				addLiteral(token.getValue());
+			}
+			else if(token.getOpcode() == PUSH_INT){
+				addLiteral(token.getValue(), token.getText());
+			}
+			else if(token.getOpcode() == PUSH_SYM){
+				addIdentifier(token.getText());
+			}
+			else{
+				addOperator(token.getOpcode());
+			}
+		}
+
+		/**
+		 * Add an integer literal.
+		 * @param value the value of the literal.
+		 */
+		public void addLiteral(int value) {
+			append(PUSH_INT, value); //the literal is its own operand
+		}
+
+		/**
+		 * Add an integer literal that is written differently from Integer.toString() of its value.
+		 * @param value the value of the literal.
+		 * @param text the literal as written.
+		 */
+		public void addLiteral(int value, String text) {
+			append(PUSH_INT, value);
+			if(spellings == null){
+				spellings = new String[code.length];
+			}
+			spellings[size - 1] = text;
+		}
+
+		/**
+		 * Add an identifier.
+		 * @param name the name of the identifier.
+		 */
+		public void addIdentifier(String name) {
+			append(PUSH_SYM, nameIndex(name));
+		}
+
+		/**
+		 * Add an operator or print.
+		 * @param opcode the opcode of the operator.
+		 */
+		public void addOperator(int opcode) {
+			append(opcode, -1);
+		}
+
+		/**
+		 * Return the position of a name in the name table, adding it if it is new.
+		 * @param name the name of the identifier.
+		 * @return the position in the name table.
+		 */
+		public int nameIndex(String name) {
+			Integer pos = index.get(name);
+			if(pos == null){ //first time the identifier is seen
+				if(numNames == names.length){
+					names = Arrays.copyOf(names, numNames * 2);
+				}
+				pos = numNames;
+				names[numNames++] = name;
+				index.put(name, pos);
+			}
+			return pos;
+		}
+
+		/**
+		 * Return the number of opcodes added so far.
+		 * @return the number of opcodes.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Create the program from everything added so far.
+		 * @return the compiled program.
+		 */
+		public CompiledProgram build() {
+			int[] immediates = null;
+			if(spellings != null){
+				respell();
+				immediates = new int[size];
+				for(int pc = 0; pc < size; pc++){
+					if(code[pc] == PUSH_INT && spellings[pc] != null){
+						immediates[pc] = nameIndex(spellings[pc]) + 1; //0 is a literal written as Integer.toString()
+					}
+				}
+			}
+			return new CompiledProgram(Arrays.copyOf(code, size), Arrays.copyOf(operands, size), immediates, Arrays.copyOf(names, numNames));
+		}
+
+		/**
+		 * Add an opcode and its operand, growing the arrays if needed.
+		 * @param opcode the opcode.
+		 * @param operand the operand.
+		 */
+		private void append(int opcode, int operand) {
+			if(size == code.length){
+				code = Arrays.copyOf(code, size * 2);
+				operands = Arrays.copyOf(operands, size * 2);
+				if(spellings != null){
+					spellings = Arrays.copyOf(spellings, size * 2);
+				}
+			}
+			code[size] = opcode;
+			operands[size] = operand;
+			size++;
+		}
+
+		/**
+		 * Keep the spelling of the literals that are printed or are the key of an "=".
+		 * The stack is simulated to find the push of the item each of them takes. If the
+		 * stack would run out, the program fails there when it runs, so the rest is left alone.
+		 */
+		private void respell() {
+			int[] stack = new int[16];	// the position of the push of each item on the stack
+			int top = 0;
+			for(int pc = 0; pc < size; pc++){
+				int opcode = code[pc];
+				if(opcode == PUSH_INT || opcode == PUSH_SYM){
+					if(top == stack.length){
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = pc;
+					continue;
+				}
+				int pops = opcode == PRINT ? 1 : 2;
+				if(top < pops){
+					return;
+				}
+				int item = stack[top - pops]; //what is printed, or the key of an "="
+				if(code[item] == PUSH_INT && spellings[item] != null){
+					if(opcode == PRINT){
+						operands[pc] = nameIndex(spellings[item]);
+					}
+					else if(opcode == ASSIGN){
+						code[item] = PUSH_SYM;
+						operands[item] = nameIndex(spellings[item]);
+					}
+				}
+				top -= pops;
+				if(opcode <= DIV){ //arithmetic pushes its result
+					stack[top++] = pc;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the symbol an opcode was compiled from.
+	 * @param opcode the opcode.
+	 * @return the symbol, null for PUSH_INT and PUSH_SYM.
+	 */
+	public static String symbolOf(int opcode) {
+		switch(opcode){
+			case ADD: return "+";
+			case SUB: return "-";
+			case MUL: return "*";
+			case DIV: return "/";
+			case ASSIGN: return "=";
+			case ADD_ASSIGN: return "+=";
+			case SUB_ASSIGN: return "-=";
+			case MUL_ASSIGN: return "*=";
+			case DIV_ASSIGN: return "/=";
+			case PRINT: return "print";
+			case INC: return "+=";
+			default: return null;
+		}
+	}
+
+	/**
+	 * Return the number of symbols in the program.
+	 * @return the number of symbols.
+	 */
+	public int size() {
+		return code.length;
+	}
+
+	/**
+	 * Return the opcode at the given position.
+	 * @param pc the position.
+	 * @return the opcode.
+	 */
+	public int getOpcode(int pc) {
+		return code[pc];
+	}
+
+	/**
+	 * Return the operand at the given position.
+	 * @param pc the position.
+	 * @return the literal for PUSH_INT, the index into the name table for PUSH_SYM and INC,
+	 * and for PRINT the index of the spelling of the literal it prints, -1 otherwise.
+	 */
+	public int getOperand(int pc) {
+		return operands[pc];
+	}
+
+	/**
+	 * Return the second operand at the given position.
+	 * @param pc the position.
+	 * @return the constant for INC, for PUSH_INT one more than the index of its spelling
+	 * in the name table or 0 if it has none, 0 otherwise.
+	 */
+	public int getImmediate(int pc) {
+		return immediates == null ? 0 : immediates[pc];
+	}
+
+	/**
+	 * Return the spelling of the literal pushed at the given position, if it was not
+	 * written the way Integer.toString() writes it.
+	 * @param pc the position.
+	 * @return the index of the spelling in the name table, -1 if it has none or is not a PUSH_INT.
+	 */
+	public int getSpelling(int pc) {
+		return code[pc] == PUSH_INT ? getImmediate(pc) - 1 : -1;
+	}
+
+	/**
+	 * Return the identifier stored at the given index of the name table.
+	 * @param index the index.
+	 * @return the identifier.
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Return the number of distinct identifiers.
+	 * @return the size of the name table.
+	 */
+	public int numNames() {
+		return names.length;
+	}
+
+	/**
+	 * Create a string representation of the program starting at the given position.
+	 * The format is the same as Node.listToString().
+	 * @param pc the position to start from.
+	 * @return the string representation.
+	 */
+	public String toString(int pc) {
+		StringBuilder ret = new StringBuilder();
+		for(int i = pc; i < code.length; i++){
+			if(code[i] == PUSH_INT){
+				ret.append(operands[i]);
+			}
+			else if(code[i] == PUSH_SYM){
+				ret.append(names[operands[i]]);
+			}
+			else if(code[i] == INC){
+				ret.append(names[operands[i]]).append(' ').append(immediates[i]).append(" +="); //the symbols it was made from
+			}
+			else{
+				ret.append(symbolOf(code[i]));
+			}
+			ret.append(" "); //add space " "
+		}
+		return ret.toString().trim();
+	}
+
+	/**
+	 * Create a string representation of the whole program.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		return toString(0);
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		Node<String> n1 = new Node<>("x");
+		Node<String> n2 = new Node<>("3");
+		Node<String> n3 = new Node<>("=");
+		Node<String> n4 = new Node<>("x");
+		Node<String> n5 = new Node<>("print");
+		Node<String> n6 = new Node<>("007");
+		n1.setNext(n2);
+		n2.setNext(n3);
+		n3.setNext(n4);
+		n4.setNext(n5);
+		n5.setNext(n6);
+
+		CompiledProgram p = CompiledProgram.compile(n1);
+
+		if(p.size() == 6 && p.numNames() == 2 && p.toString().equals("x 3 = x print 7") && p.getName(p.getSpelling(5)).equals("007")) {
+			System.out.println("Yay 1");
+		}
+
+		if(p.getOpcode(0) == PUSH_SYM && p.getOpcode(1) == PUSH_INT && p.getOperand(1) == 3 && p.getOpcode(2) == ASSIGN && p.getOpcode(4) == PRINT && p.getOperand(0) == p.getOperand(3) && p.getOperand(2) == -1) {
+			System.out.println("Yay 2");
+		}
+
+		String source = "007 print +5 3 = +5 print -0 +5 +";
+		Computer c1 = new Computer();
+		CaptureSink out1 = new CaptureSink();
+		c1.setOutput(out1);
+		c1.process(Benchmarks.toNodes(source), 20);
+		Computer c2 = new Computer();
+		CaptureSink out2 = new CaptureSink();
+		c2.setOutput(out2);
+		new ProgramExecutor(CompiledProgram.compile(Benchmarks.toNodes(source)), c2).process(20);
+
+		if(out2.getOutput().equals(out1.getOutput()) && out2.getOutput().equals("007\n+5\n") && c2.symbols.toString().equals(c1.symbols.toString())) {
+			System.out.println("Yay 3");
+		}
+	}
+}
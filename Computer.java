@@ -6,13 +6,70 @@ import java.io.IOException;
 
 /**
  * The implementation of a postfix computer.
+ * All the state of a program is kept in the instance, so different
+ * Computer instances can run programs on different threads at the same time.
+ * A single instance must only be used by one thread at a time.
  * @author Quang Vo.
  */
 class Computer {
 	
-	private static Node<String> front;  	// first node
-	private static Node<String> back;  	// last node
-	private static int size = 0;		// number of nodes in the queue
+	private final ConcurrentSymbolTable globals; // variables shared with other computers, null if none
+	private OutputSink output = OutputSink.STDOUT; // where print statements go
+	
+	private static final int FLUSH_INTERVAL = 1 << 16; // symbols counted by process() before they are added to the statistics
+	
+	private InterpreterStats stats; // where process() counts go, null if statistics are off
+	private long[] opcodeCounts; // executions of each opcode by process() since the last flush
+	private long hits; // symbol lookups by process() that found the key since the last flush
+	private long misses; // symbol lookups by process() that didn't find the key since the last flush
+	private int highWater; // largest size of the progStack seen by process()
+	private int unflushed; // symbols processed since the last flush
+	private long executeNanos; // time spent in process() on the current program
+	private boolean windowed; // a run method feeds process() one window at a time and counts the program itself
+	
+	/**
+	 * Create a computer with its own variables only.
+	 */
+	public Computer() {
+		this(null);
+	}
+	
+	/**
+	 * Create a computer that shares a set of variables with other computers.
+	 * When a compiled program starts, the names that were ever put in globals are read and
+	 * written there, with compound assignments done atomically; every other name is local.
+	 * @param globals the shared variables, or null for none.
+	 */
+	public Computer(ConcurrentSymbolTable globals) {
+		this.globals = globals;
+	}
+	
+	/**
+	 * Return the variables shared with other computers.
+	 * @return the shared variables, or null if there are none.
+	 */
+	public ConcurrentSymbolTable getGlobals() {
+		return globals;
+	}
+	
+	/**
+	 * Send the output of print statements somewhere other than System.out.
+	 * A buffered sink is only written out when it is full, when it is flushed,
+	 * and at the end of the run methods, even when the program fails. runProgram()
+	 * doesn't flush it, so flush the sink after calling runProgram().
+	 * @param output the sink to print to.
+	 */
+	public void setOutput(OutputSink output) {
+		this.output = output;
+	}
+	
+	/**
+	 * Return where the output of print statements goes.
+	 * @return the sink.
+	 */
+	public OutputSink getOutput() {
+		return output;
+	}
 	
 	/**
 	 * Read a file in a scanner and create a queue of nodes.
@@ -27,17 +84,22 @@ class Computer {
 		//the values in the nodes should be the strings read in each time you call
 		//next() on the scanner
 		
+		InterpreterStats stats = InterpreterStats.active();
+		long start = stats != null ? System.nanoTime() : 0;
+		
 		File file = new File(filename); //open the file
 		
 		Scanner sc = new Scanner(file); //read the file
 		
 		String currentString = "";
+		Node<String> front = null;  	// first node
+		Node<String> back = null;  	// last node
 				
 		while(sc.hasNext()){ //check if there are more strings in the file 
 			currentString = sc.next(); //get the string
 			Node<String> newNode = new Node<>(currentString); //create a node with the string
 			
-			if(size == 0){
+			if(front == null){
 				front = back = newNode; //front and back point to the same newNode
 			}
 			else{
@@ -45,17 +107,22 @@ class Computer {
 				newNode.setPrev(back);
 				back = newNode; //set the back to be the new node
 			}
-			size++;
 		}		
 
 		sc.close(); //close the file
 		
+		if(stats != null){
+			stats.recordLoad(System.nanoTime() - start); //how long the program took to load
+		}
 		return front; 
 	}
 	
 	/**
 	 * Process the specified number of symbols from the input queue.
 	 * Update the progStack and symbols variables appropriately.
+	 * Print statements go to the output sink of the computer.
+	 * While InterpreterStats is on, it counts each symbol, each lookup of a key in symbols
+	 * and the size of the progStack, and adds them to the statistics now and then.
 	 * @param input the queue of nodes with symbols.
 	 * @param numSymbols the number of specified symbols to be processed.
 	 * @return the remaining queue items.
@@ -72,113 +139,569 @@ class Computer {
 		//and numSymbols=2, you would push 3 and push 2, then return the linked
 		//list with just the + node remaining.
 		
-		for(int i = 0; i < numSymbols; i++){
+		stats = InterpreterStats.active(); //counted only while statistics are on
+		long start = stats != null ? System.nanoTime() : 0;
+		int i = 0;
+		
+		try {
+			for(; i < numSymbols; i++){
 			
-			//check if the input is null, then return the input
-			if(input == null){ 
-				return input;
-			}
+				//check if the input is null, then stop
+				if(input == null){ 
+					break;
+				}
 			
-			String item = input.getValue(); //get the first node from the queue
-			input = input.getNext(); //move to the next node
+				String item = input.getValue(); //get the first node from the queue
+				input = input.getNext(); //move to the next node
+				if(stats != null){
+					countSymbol(Token.opcodeOf(item));
+				}
 
-			//check to see if the item is an operator
-			if(!checkValue(INT_OPS, ASSIGN_OPS, item) && !item.equals("print")){ 
-				progStack.push(item); //push the item onto the progStack if it is not an operator					
-			}
+				//check to see if the item is an operator
+				if(!checkValue(INT_OPS, ASSIGN_OPS, item) && !item.equals("print")){ 
+					progStack.push(item); //push the item onto the progStack if it is not an operator					
+				}
 			
-			//check if the item is the "=" operator
-			else if(item.equals("=")){
-				int value = 0;
+				//check if the item is the "=" operator
+				else if(item.equals("=")){
+					int value = 0;
 				
-				if(isInteger((String)progStack.peek())){ //check if the top of the progStack is an integer or a string
-					value = Integer.parseInt((String) progStack.pop()); //get the value
-				}
-				else{
-					value = symbols.get((String) progStack.pop()); //get the value from symbols
-				}
+					if(isInteger((String)progStack.peek())){ //check if the top of the progStack is an integer or a string
+						value = Integer.parseInt((String) progStack.pop()); //get the value
+					}
+					else{
+						value = lookup((String) progStack.pop()); //get the value from symbols
+					}
 				
-				String key = (String) progStack.pop(); //get the key
-				symbols.put(key, value); //put a new table entry into the symbols
-			}
+					String key = (String) progStack.pop(); //get the key
+					store(key, value); //put a new table entry into the symbols
+				}
 			
-			//check if the item is the "print" operator
-			else if(item.equals("print")){
-				String printItem = (String) progStack.pop(); //pop one item from the progStack
+				//check if the item is the "print" operator
+				else if(item.equals("print")){
+					String printItem = (String) progStack.pop(); //pop one item from the progStack
 				
-				if(!isInteger(printItem)){ //check if the item is an integer
-					int value = symbols.get(printItem); //if not an integer, get the value from the symbols using the item as the key
-					printItem = Integer.toString(value); //convert the value to a string
-				}
-				System.out.println(printItem.toString()); //print the item 
+					if(!isInteger(printItem)){ //check if the item is an integer
+						int value = lookup(printItem); //if not an integer, get the value from the symbols using the item as the key
+						printItem = Integer.toString(value); //convert the value to a string
+					}
+					output.println(printItem); //print the item 
 
-			}
-			else{
-				int item1 = 0; //first operand
-				int item2 = 0; //second operand
-				String key = ""; 
-				String result = ""; 
-				int value = 0; 
-				
-				if(isInteger((String) progStack.peek())){ //check if the top of the progStack is an integer or a string
-					item1 = Integer.parseInt((String) progStack.pop()); //get the first operand
 				}
 				else{
-					key = (String) progStack.pop(); //get the key 
-					item1 = symbols.get(key); //the first operand will be the value associated with the key in symbols
-				}
+					int item1 = 0; //first operand
+					int item2 = 0; //second operand
+					String key = ""; 
+					String result = ""; 
+					int value = 0; 
+				
+					if(isInteger((String) progStack.peek())){ //check if the top of the progStack is an integer or a string
+						item1 = Integer.parseInt((String) progStack.pop()); //get the first operand
+					}
+					else{
+						key = (String) progStack.pop(); //get the key 
+						item1 = lookup(key); //the first operand will be the value associated with the key in symbols
+					}
 				
-				if(isInteger((String) progStack.peek())){ //check if the top of the progStack is an integer or a string
-					item2 = Integer.parseInt((String) progStack.pop());	//get the second operand
+					if(isInteger((String) progStack.peek())){ //check if the top of the progStack is an integer or a string
+						item2 = Integer.parseInt((String) progStack.pop());	//get the second operand
+					}
+					else{
+						key = (String) progStack.pop(); //get the key
+						item2 = lookup(key); //the second operand will be the value associated with the key in symbols
+					}
+				
+					switch(item){
+						case "+": 
+							int sum = item2 + item1; //when the item is "+" operator
+							result = Integer.toString(sum);
+							progStack.push(result); //push the result onto the stack
+							break;
+						case "-":
+							int diff = item2 - item1; //when the item is "-" operator
+							result = Integer.toString(diff);
+							progStack.push(result); //push the result onto the stack
+							break;
+						case "*":
+							int product = item2 * item1; //when the item is "*" operator
+							result = Integer.toString(product);
+							progStack.push(result); //push the result onto the stack
+							break;
+						case "/":
+							int quotient = item2 / item1; //when the item is "/" operator
+							result = Integer.toString(quotient);
+							progStack.push(result); //push the result onto the stack
+							break;
+						case "+=":
+							value = item2 + item1; //when the item is "+=" operator
+							store(key, value); //keep the key, update the value
+							break;
+						case "-=":
+							value = item2 - item1; //when the item is "-=" operator
+							store(key, value); //keep the key, update the value
+							break;
+						case "*=":
+							value = item2 * item1; //when the item is "*=" operator
+							store(key, value); //keep the key, update the value
+							break;
+						case "/=":
+							value = item2 / item1; //when the item is "/=" operator
+							store(key, value); //keep the key, update the value
+							break;
+					}
 				}
-				else{
-					key = (String) progStack.pop(); //get the key
-					item2 = symbols.get(key); //the second operand will be the value associated with the key in symbols
+			
+				if(stats != null && progStack.size() > highWater){
+					highWater = progStack.size(); //the new high-water mark
 				}
-				
-				switch(item){
-					case "+": 
-						int sum = item2 + item1; //when the item is "+" operator
-						result = Integer.toString(sum);
-						progStack.push(result); //push the result onto the stack
-						break;
-					case "-":
-						int diff = item2 - item1; //when the item is "-" operator
-						result = Integer.toString(diff);
-						progStack.push(result); //push the result onto the stack
-						break;
-					case "*":
-						int product = item2 * item1; //when the item is "*" operator
-						result = Integer.toString(product);
-						progStack.push(result); //push the result onto the stack
-						break;
-					case "/":
-						int quotient = item2 / item1; //when the item is "/" operator
-						result = Integer.toString(quotient);
-						progStack.push(result); //push the result onto the stack
-						break;
-					case "+=":
-						value = item2 + item1; //when the item is "+=" operator
-						symbols.put(key, value); //keep the key, update the value
-						break;
-					case "-=":
-						value = item2 - item1; //when the item is "-=" operator
-						symbols.put(key, value); //keep the key, update the value
+			}
+		}
+		catch(RuntimeException e) {
+			if(stats != null){
+				flushStats(); //the program stops here, so don't lose the counts
+				executeNanos = 0; //it didn't run to the end
+			}
+			throw e;
+		}
+		
+		if(stats != null){
+			countCall(start, i, input == null);
+		}
+		return input;
+	}
+	
+	/**
+	 * Process the specified number of tokens from the input queue, the same as process(),
+	 * but with symbols that were classified when they were read, so none is classified again.
+	 * The progStack holds tokens, which print as the symbols they were read from.
+	 * @param input the queue of nodes with tokens.
+	 * @param numSymbols the number of specified tokens to be processed.
+	 * @return the remaining queue items.
+	 */
+	public Node<Token> processTokens(Node<Token> input, int numSymbols) {
+		stats = InterpreterStats.active(); //counted only while statistics are on
+		long start = stats != null ? System.nanoTime() : 0;
+		int i = 0;
+		
+		try {
+			for(; i < numSymbols; i++){
+				if(input == null){ 
+					break;
+				}
+			
+				Token item = input.getValue(); //get the first node from the queue
+				input = input.getNext(); //move to the next node
+				int opcode = item.getOpcode();
+				if(stats != null){
+					countSymbol(opcode);
+				}
+
+				switch(item.getKind()){
+					case Token.LITERAL:
+					case Token.IDENTIFIER:
+						progStack.push(item); //push the item onto the progStack if it is not an operator
 						break;
-					case "*=":
-						value = item2 * item1; //when the item is "*=" operator
-						symbols.put(key, value); //keep the key, update the value
+					case Token.PRINT:
+						Token printItem = popToken();
+						if(printItem.getKind() == Token.LITERAL){
+							output.println(printItem.getText()); //a literal prints as it was written
+						}
+						else{
+							output.println(Integer.toString(lookup(printItem.getText())));
+						}
 						break;
-					case "/=":
-						value = item2 / item1; //when the item is "/=" operator
-						symbols.put(key, value); //keep the key, update the value
+					case Token.INT_OP:
+						int right = valueOf(popToken()); //first operand
+						int left = valueOf(popToken()); //second operand
+						progStack.push(Token.literal(CompiledProgram.apply(opcode, left, right)));
 						break;
+					default:
+						if(opcode == CompiledProgram.ASSIGN){
+							int value = valueOf(popToken());
+							store(popToken().getText(), value); //the key is the symbol as written
+						}
+						else{
+							String key = ""; //the last identifier popped
+							Token first = popToken();
+							int item1 = valueOf(first); //first operand
+							if(first.getKind() == Token.IDENTIFIER){
+								key = first.getText();
+							}
+							Token second = popToken();
+							int item2 = valueOf(second); //second operand
+							if(second.getKind() == Token.IDENTIFIER){
+								key = second.getText();
+							}
+							store(key, CompiledProgram.apply(opcode, item2, item1)); //keep the key, update the value
+						}
 				}
+			
+				if(stats != null && progStack.size() > highWater){
+					highWater = progStack.size(); //the new high-water mark
+				}
+			}
+		}
+		catch(RuntimeException e) {
+			if(stats != null){
+				flushStats(); //the program stops here, so don't lose the counts
+				executeNanos = 0; //it didn't run to the end
 			}
+			throw e;
+		}
+		
+		if(stats != null){
+			countCall(start, i, input == null);
 		}
 		return input;
 	}
 	
+	/**
+	 * Pop a token from the progStack.
+	 * @return the token.
+	 * @throws NullPointerException if the progStack is empty.
+	 */
+	private Token popToken() {
+		Token token = (Token) progStack.pop();
+		if(token == null){
+			throw new NullPointerException("No more items");
+		}
+		return token;
+	}
+	
+	/**
+	 * Return the value of a token, looking up an identifier in symbols.
+	 * @param token the token.
+	 * @return the value.
+	 * @throws NullPointerException if the identifier is not in symbols.
+	 */
+	private int valueOf(Token token) {
+		if(token.getKind() == Token.LITERAL){
+			return token.getValue();
+		}
+		return lookup(token.getText());
+	}
+	
+	/**
+	 * Count a symbol that process() or processTokens() is about to run.
+	 * @param opcode the opcode of the symbol.
+	 */
+	private void countSymbol(int opcode) {
+		if(opcodeCounts == null){
+			opcodeCounts = new long[CompiledProgram.NUM_OPCODES];
+		}
+		opcodeCounts[opcode]++;
+	}
+	
+	/**
+	 * Return the value of a key in symbols, counting the lookup if statistics are on.
+	 * @param key the key.
+	 * @return the value.
+	 * @throws NullPointerException if the key is not in symbols.
+	 */
+	private int lookup(String key) {
+		if(stats == null){
+			return symbols.get(key);
+		}
+		try {
+			int value = symbols.get(key);
+			hits++;
+			return value;
+		}
+		catch(NullPointerException e) {
+			misses++; //a read that finds nothing stops the program
+			throw e;
+		}
+	}
+	
+	/**
+	 * Put a key and its value in symbols, counting the lookup if statistics are on.
+	 * @param key the key.
+	 * @param value the value.
+	 */
+	private void store(String key, int value) {
+		boolean found = symbols.put(key, value);
+		if(stats != null && found){
+			hits++;
+		}
+		else if(stats != null){
+			misses++;
+		}
+	}
+	
+	/**
+	 * Account for a call to process(), and add the counts to the statistics every
+	 * FLUSH_INTERVAL symbols. When the input runs out, the program is counted as run,
+	 * unless a run method feeds it one window at a time and counts it itself.
+	 * @param start the time the call started.
+	 * @param processed the number of symbols the call processed.
+	 * @param finished whether the input ran out.
+	 */
+	private void countCall(long start, int processed, boolean finished) {
+		if(processed == 0){
+			return; //already finished, or asked for nothing
+		}
+		executeNanos += System.nanoTime() - start;
+		unflushed += processed;
+		if(finished && !windowed){
+			countProgram();
+		}
+		else if(unflushed >= FLUSH_INTERVAL){
+			flushStats();
+		}
+	}
+	
+	/**
+	 * Add the counts to the statistics and record that a program ran to the end,
+	 * with the time process() spent on it.
+	 */
+	private void countProgram() {
+		if(stats == null || opcodeCounts == null){
+			return; //statistics were off, or nothing was processed
+		}
+		flushStats();
+		stats.recordExecute(executeNanos);
+		executeNanos = 0; //the next input is another program
+	}
+	
+	/**
+	 * Add the counts of process() since the last flush to the statistics.
+	 */
+	private void flushStats() {
+		stats.add(opcodeCounts, hits, misses, highWater);
+		Arrays.fill(opcodeCounts, 0);
+		hits = 0;
+		misses = 0;
+		unflushed = 0;
+	}
+	
+	/**
+	 * Compile the file into an opcode array, straight from a memory-mapped buffer, and run all of it.
+	 * Display the output of any print statements, like the normal mode of runProgram.
+	 * With -Dpostfix.cache set, this and the other compiled modes take the program from the
+	 * ProgramCache, and a file that was run before isn't tokenized again.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runCompiled(String filename) throws IOException {
+		CompiledProgram program = ProgramCache.load(filename);
+		ProgramExecutor executor = new ProgramExecutor(program, this);
+		
+		try {
+			while(executor.remaining() > 0) {
+				executor.process(10); //process 10 symbols at a time
+			}
+		}
+		finally {
+			output.flush(); //also the lines printed before an error
+		}
+	}
+	
+	/**
+	 * Compile the file, optimize it and run all of it.
+	 * The output and the final symbols are the same as runCompiled, but the optimized
+	 * program has fewer steps. Stores to variables are all kept if the computer has globals.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runOptimized(String filename) throws IOException {
+		CompiledProgram program = Optimizer.optimize(ProgramCache.load(filename), globals == null);
+		ProgramExecutor executor = new ProgramExecutor(program, this);
+		
+		try {
+			while(executor.remaining() > 0) {
+				executor.process(10); //process 10 symbols at a time
+			}
+		}
+		finally {
+			output.flush(); //also the lines printed before an error
+		}
+	}
+	
+	/**
+	 * Compile the file, optimize it and run all of it with the FusedInterpreter.
+	 * The output and the final symbols are the same as runCompiled. The FusedInterpreter
+	 * can't share variables or count statistics, so it is run like runOptimized when the
+	 * computer has globals or statistics are on.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runFused(String filename) throws IOException {
+		if(globals != null || InterpreterStats.active() != null){
+			runOptimized(filename);
+			return;
+		}
+		FusedInterpreter interpreter = new FusedInterpreter(Optimizer.optimize(ProgramCache.load(filename)), this);
+
+		try {
+			while(interpreter.remaining() > 0) {
+				interpreter.process(10); //process 10 instructions at a time
+			}
+		}
+		finally {
+			output.flush(); //also the lines printed before an error
+		}
+	}
+
+	/**
+	 * Compile the file, optimize it and run all of it as a generated JVM class.
+	 * The output and the final symbols are the same as runCompiled, but nothing can be seen
+	 * until the program finishes. So it is run like runOptimized when the symbols have to be
+	 * seen in between: when the computer has globals or statistics are on. The same happens
+	 * when BytecodeCompiler can't compile the program.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runBytecode(String filename) throws IOException {
+		BytecodeProgram program = null;
+		if(globals == null && InterpreterStats.active() == null){
+			program = BytecodeCompiler.compile(Optimizer.optimize(ProgramCache.load(filename)));
+		}
+		if(program == null){
+			runOptimized(filename);
+			return;
+		}
+		try {
+			program.run(this);
+		}
+		finally {
+			output.flush(); //also the lines printed before an error
+		}
+	}
+
+	/**
+	 * Load a program converted by ProgramConverter, straight from a memory-mapped file, and run all of it.
+	 * Nothing is tokenized, and the output and the final symbols are the same as runCompiled
+	 * on the text file it was converted from.
+	 * @param filename the binary file to be opened.
+	 * @throws IOException when the file can't be read or found, or isn't a binary program.
+	 */
+	public void runBinary(String filename) throws IOException {
+		CompiledProgram program = BinaryProgram.load(filename);
+		ProgramExecutor executor = new ProgramExecutor(program, this);
+		
+		try {
+			while(executor.remaining() > 0) {
+				executor.process(10); //process 10 symbols at a time
+			}
+		}
+		finally {
+			output.flush(); //also the lines printed before an error
+		}
+	}
+
+	/**
+	 * Compile the file and run all of it, writing what each step changes to a trace file.
+	 * This is the non-interactive version of the debug mode of runProgram: it never waits
+	 * for Enter, and each step costs the same no matter how big the state is.
+	 * Use TraceViewer to see the state at any step.
+	 * @param filename the file to be opened.
+	 * @param traceFile the trace file to write.
+	 * @throws IOException when a file can't be read or written.
+	 */
+	public void runTraced(String filename, String traceFile) throws IOException {
+		CompiledProgram program = ProgramCache.load(filename);
+		ProgramExecutor executor = new ProgramExecutor(program, this);
+		TraceWriter trace = new TraceWriter(traceFile);
+		executor.setTrace(trace);
+		
+		try {
+			while(executor.remaining() > 0) {
+				executor.process(10); //process 10 symbols at a time
+			}
+		}
+		finally {
+			trace.close(); //keep the steps up to an error
+			output.flush();
+		}
+	}
+	
+	/**
+	 * Run all of a file while holding only a bounded window of its symbols in memory.
+	 * The symbols are read lazily, classified once into tokens and fed to processTokens() one window at a time.
+	 * Display the output of any print statements, like the normal mode of runProgram.
+	 * @param filename the file to be opened.
+	 * @param window the maximum number of symbols read ahead.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runStreaming(String filename, int window) throws IOException {
+		TokenReader reader = new TokenReader(filename);
+		windowed = true; //the end of a window isn't the end of the program
+		try {
+			Node<Token> input = reader.nextWindow(window);
+			while(input != null) {
+				while(input != null) {
+					input = processTokens(input, 10); //process 10 symbols at a time
+				}
+				input = reader.nextWindow(window); //the previous window can be garbage collected
+			}
+			countProgram();
+		}
+		finally {
+			windowed = false;
+			reader.close();
+			output.flush();
+		}
+	}
+	
+	/**
+	 * Run all of a file while another thread reads it, so reading and executing overlap.
+	 * A tokenizer thread reads windows of symbols and hands them over through a RingBuffer,
+	 * and this thread feeds each window to processTokens() as runStreaming does, so the output,
+	 * the final symbols and the errors are the same. If the program fails, the tokenizer stops.
+	 * @param filename the file to be opened.
+	 * @param window the number of symbols in each window handed over.
+	 * @param windows the maximum number of windows read ahead.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public void runPipelined(String filename, int window, int windows) throws IOException {
+		TokenReader reader = new TokenReader(filename);
+		RingBuffer<Node<Token>> ring = new RingBuffer<>(windows);
+		IOException[] failure = new IOException[1]; //set by the tokenizer before it closes the ring
+		Thread tokenizer = new Thread(() -> {
+			try {
+				Node<Token> next = reader.nextWindow(window);
+				while(next != null && ring.put(next)) {
+					next = reader.nextWindow(window);
+				}
+			}
+			catch(IOException e) {
+				failure[0] = e;
+			}
+			finally {
+				ring.close();
+			}
+		}, "postfix-tokenizer");
+		tokenizer.setDaemon(true);
+		tokenizer.start();
+		
+		windowed = true; //the end of a window isn't the end of the program
+		try {
+			Node<Token> input = ring.take();
+			while(input != null) {
+				while(input != null) {
+					input = processTokens(input, 10); //process 10 symbols at a time
+				}
+				input = ring.take(); //the previous window can be garbage collected
+			}
+			if(failure[0] != null) {
+				throw failure[0];
+			}
+			countProgram();
+		}
+		finally {
+			windowed = false;
+			ring.cancel();
+			try {
+				tokenizer.join();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			reader.close();
+			output.flush();
+		}
+	}
+	
 	/**
 	 * Check if the item is a symbol in INT_OPS or ASSIGN_OPS.
 	 * @param INT_OPS the symbols ["+","-","*","/"].
@@ -206,15 +729,7 @@ class Computer {
 	 * @return true if the item is an integer, false otherwise.
 	 */
 	private static boolean isInteger(String item){
-		try 
-        { 
-            Integer.parseInt(item); //check valid integer using parseInt() method 
-            return true;
-        }  
-        catch (NumberFormatException e)  
-        { 
-        	return false;
-        } 
+		return Token.isInteger(item); //check valid integer without catching a NumberFormatException
 	}
 	
 	/**
@@ -226,7 +741,7 @@ class Computer {
 		System.out.println("You need to put test code in testMain() to run Computer with no parameters.");
 		
 		try {
-			Computer.fileToNodeQueue("sample2.txt");
+			Node<String> front = Computer.fileToNodeQueue("sample2.txt");
 			new Computer().process(front, 12);
 						
 
@@ -247,7 +762,7 @@ class Computer {
 	
 	//or these...
 	public ProgramStack<Object> progStack = new ProgramStack<>();
-	public SymbolTable<Integer> symbols = new SymbolTable<>(5);
+	public IntSymbolTable symbols = new IntSymbolTable(5);
 	
 	/**
 	 * The program's entry point.
@@ -0,0 +1,230 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A symbol table of int values that many computers can share at the same time.
+ * Lookups never lock and resizing doesn't block readers (the table is a
+ * ConcurrentHashMap), and every variable is an AtomicLong so the compound
+ * assignment operators are atomic read-modify-writes.
+ * Executors look up the cell of each global once, when they start, so a key keeps its
+ * cell for as long as the table lives: remove() marks the cell undefined instead of
+ * dropping it, and a later put() defines it again, so programs that are running see both.
+ * @author Quang Vo
+ */
+class ConcurrentSymbolTable {
+	private static final long UNDEFINED = Long.MIN_VALUE; //the value of a removed key, outside the range of int
+
+	private final ConcurrentHashMap<String, AtomicLong> storage; //the underlying symbol table
+
+	/**
+	 * Initialize an empty symbol table with the specified initial capacity.
+	 * @param size the specified initial capacity.
+	 */
+	public ConcurrentSymbolTable(int size) {
+		storage = new ConcurrentHashMap<>(size);
+	}
+
+	/**
+	 * Return the number of key-value pairs in the symbol table.
+	 * Removed keys are not counted, so this is O(n).
+	 * @return the number of key-value pairs.
+	 */
+	public int size() {
+		int size = 0;
+		for(AtomicLong cell : storage.values()){
+			if(cell.get() != UNDEFINED){
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Insert the key-value pair into the symbol table.
+	 * Replace the old value if the key already exists in the table.
+	 * @param k the key.
+	 * @param v the value.
+	 */
+	public void put(String k, int v) {
+		AtomicLong cell = storage.get(k);
+		if(cell == null){
+			cell = storage.putIfAbsent(k, new AtomicLong(v));
+			if(cell == null){
+				return; //the new cell is in the table
+			}
+		}
+		cell.set(v);
+	}
+
+	/**
+	 * Remove the specified key and its associated value from this symbol table.
+	 * Its cell stays in the table, marked undefined, so executors that hold it fail to
+	 * read it like any undefined symbol, and see the value of a later put().
+	 * @param k the key.
+	 * @return true if the key was in the table, false otherwise.
+	 */
+	public boolean remove(String k) {
+		AtomicLong cell = storage.get(k);
+		return cell != null && cell.getAndSet(UNDEFINED) != UNDEFINED;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 * @param k the key.
+	 * @return the value associated with the specified key.
+	 * @throws NullPointerException if the key is not in the table.
+	 */
+	public int get(String k) {
+		return get(storage.get(k), k);
+	}
+
+	/**
+	 * Return the value in a cell.
+	 * @param cell the cell, may be null.
+	 * @param k the key of the cell.
+	 * @return the value.
+	 * @throws NullPointerException if the cell is null or its key was removed.
+	 */
+	public static int get(AtomicLong cell, String k) {
+		long value = cell == null ? UNDEFINED : cell.get();
+		if(value == UNDEFINED){
+			throw new NullPointerException("Undefined symbol " + k);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Check if the key is in the symbol table.
+	 * @param k the key.
+	 * @return true if the key is in the table, false otherwise.
+	 */
+	public boolean containsKey(String k) {
+		return isDefined(storage.get(k));
+	}
+
+	/**
+	 * Check if a cell holds a value.
+	 * @param cell the cell, may be null.
+	 * @return true if the cell holds a value, false if it is null or its key was removed.
+	 */
+	public static boolean isDefined(AtomicLong cell) {
+		return cell != null && cell.get() != UNDEFINED;
+	}
+
+	/**
+	 * Return the cell holding the value of a key, so it can be used without looking it up again.
+	 * The cell of a removed key is returned too, since a later put() defines it again.
+	 * @param k the key.
+	 * @return the cell, null if the key was never in the table.
+	 */
+	public AtomicLong cell(String k) {
+		return storage.get(k);
+	}
+
+	/**
+	 * Atomically apply an operator to the value of a key, as in "k operand +=".
+	 * @param k the key.
+	 * @param opcode the CompiledProgram opcode of the operator.
+	 * @param operand the other operand.
+	 * @return the new value.
+	 * @throws NullPointerException if the key is not in the table.
+	 */
+	public int update(String k, int opcode, int operand) {
+		return update(storage.get(k), k, opcode, operand, true);
+	}
+
+	/**
+	 * Atomically apply an operator to the value in a cell.
+	 * @param cell the cell, may be null.
+	 * @param k the key of the cell.
+	 * @param opcode the CompiledProgram opcode of the operator.
+	 * @param operand the other operand.
+	 * @param cellIsLeft true if the cell is the left operand, false if it is the right one.
+	 * @return the new value.
+	 * @throws NullPointerException if the cell is null or its key was removed.
+	 */
+	public static int update(AtomicLong cell, String k, int opcode, int operand, boolean cellIsLeft) {
+		while(true){ //retry if another thread changed the value in between
+			long current = get(cell, k);
+			int next = cellIsLeft ? CompiledProgram.apply(opcode, (int) current, operand) : CompiledProgram.apply(opcode, operand, (int) current);
+			if(cell.compareAndSet(current, next)){
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Create a string representation of the symbol table, in the same format as SymbolTable.
+	 * The order of the entries is not specified.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for(Map.Entry<String, AtomicLong> e : storage.entrySet()){
+			long value = e.getValue().get();
+			if(value != UNDEFINED){
+				s.append(e.getKey()).append(':').append(value).append('\n');
+			}
+		}
+		return s.toString().trim();
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		ConcurrentSymbolTable st = new ConcurrentSymbolTable(4);
+		st.put("count", 0);
+		st.put("ten", 10);
+
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++){
+			threads[t] = new Thread(() -> {
+				for(int i = 0; i < 10000; i++){
+					st.update("count", CompiledProgram.ADD_ASSIGN, 1);
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread t : threads){
+			t.join();
+		}
+
+		if(st.get("count") == 40000 && st.size() == 2) {
+			System.out.println("Yay 1");
+		}
+
+		if(update(st.cell("ten"), "ten", CompiledProgram.SUB_ASSIGN, 3, false) == -7 && st.get("ten") == -7 && st.remove("ten") && !st.containsKey("ten") && st.size() == 1 && !st.remove("ten")) {
+			System.out.println("Yay 2");
+		}
+
+		ConcurrentSymbolTable globals = new ConcurrentSymbolTable(4);
+		globals.put("n", 1);
+		Computer computer = new Computer(globals);
+		CaptureSink out = new CaptureSink();
+		computer.setOutput(out);
+		ProgramExecutor executor = new ProgramExecutor(CompiledProgram.compile(Benchmarks.toNodes("n 1 += n 1 += n print")), computer);
+		executor.process(3); //n is 2, and the executor holds its cell
+		globals.remove("n");
+		globals.put("n", 10);
+		executor.process(5);
+		if(globals.get("n") == 11 && out.getOutput().equals("11" + System.lineSeparator())) {
+			System.out.println("Yay 3");
+		}
+
+		ProgramExecutor reader = new ProgramExecutor(CompiledProgram.compile(Benchmarks.toNodes("n print")), computer);
+		globals.remove("n");
+		String message = "";
+		try {
+			reader.process(2);
+		}
+		catch(NullPointerException e) {
+			message = e.getMessage();
+		}
+		if(message.equals("Undefined symbol n") && globals.toString().isEmpty() && globals.size() == 0) {
+			System.out.println("Yay 4");
+		}
+	}
+}
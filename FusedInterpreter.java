@@ -0,0 +1,580 @@
+import java.util.Arrays;
+
+/**
+ * Runs a compiled program after translating it into superinstructions.
+ * Common sequences of symbols become one instruction, for example "x 1 +=" becomes
+ * INC and "x 5 =" becomes SET, and every instruction is dispatched by one dense
+ * switch over consecutive opcodes, which the JIT compiles to a jump table.
+ * The instructions are packed three ints apiece (opcode and two operands) in one array,
+ * and the stack and variables are plain arrays sized when the program is translated,
+ * so nothing has to grow while it runs. A translated Program can be run many times.
+ * It has the same semantics as ProgramExecutor, but process() counts instructions
+ * instead of symbols, it has no statistics or traces, and it can't be used with globals.
+ * Use ProgramExecutor when those are needed.
+ * @author Quang Vo
+ */
+class FusedInterpreter {
+
+	//the opcodes of CompiledProgram keep their numbers
+	private static final int PUSH_INT = CompiledProgram.PUSH_INT;
+	private static final int PUSH_SYM = CompiledProgram.PUSH_SYM;
+	private static final int ADD = CompiledProgram.ADD;
+	private static final int SUB = CompiledProgram.SUB;
+	private static final int MUL = CompiledProgram.MUL;
+	private static final int DIV = CompiledProgram.DIV;
+	private static final int ASSIGN = CompiledProgram.ASSIGN;
+	private static final int ADD_ASSIGN = CompiledProgram.ADD_ASSIGN;
+	private static final int SUB_ASSIGN = CompiledProgram.SUB_ASSIGN;
+	private static final int MUL_ASSIGN = CompiledProgram.MUL_ASSIGN;
+	private static final int DIV_ASSIGN = CompiledProgram.DIV_ASSIGN;
+	private static final int PRINT = CompiledProgram.PRINT;
+	private static final int INC = CompiledProgram.INC;		// "x c +=": x = x + c
+	//the superinstructions, a is the slot of x and b is a constant or the slot of y
+	private static final int SET = 13;			// "x c =": x = c
+	private static final int COPY = 14;			// "x y =": x = y
+	private static final int ADD_VAR = 15;		// "x y +=": x = x + y
+	private static final int SUB_VAR = 16;		// "x y -="
+	private static final int MUL_VAR = 17;		// "x y *="
+	private static final int DIV_VAR = 18;		// "x y /="
+	private static final int PRINT_VAR = 19;	// "x print"
+	private static final int ADD_CONST = 20;	// "x c +": push x + c
+	private static final int SUB_CONST = 21;	// "x c -"
+	private static final int MUL_CONST = 22;	// "x c *"
+	private static final int DIV_CONST = 23;	// "x c /"
+	private static final int DEC = 24;			// "x c -=": x = x - c
+
+	private final int[] ops;		// opcode, a and b of each instruction, shared with the program
+	private final int size;			// number of instructions
+	private final Computer computer;	// the computer whose symbols are updated
+	private OutputSink out;			// where print statements go
+	private int pc;					// the next instruction
+
+	private final String[] names;	// the name of each slot, shared with the program
+	private final int[] slots;		// the value of each variable
+	private final boolean[] defined;	// whether each variable has a value
+	private final int[] values;	// the integers on the stack
+	private final int[] refs;		// the slot of each identifier on the stack, -1 for integers
+	private int sp;					// number of items on the stack
+
+	private String[] extraNames = new String[0];	// names assigned through an integer key, or "", in order
+	private int[] extraValues = new int[0];		// their values
+	private IntSymbolTable extraIndex;				// position of each extra name
+
+	/**
+	 * A compiled program translated into superinstructions.
+	 * Translating costs about as much as running the program once, so a program
+	 * that is run many times should be translated once and shared.
+	 */
+	static class Program {
+		private final int[] ops;		// opcode, a and b of each instruction
+		private final int size;			// number of instructions
+		private final String[] names;	// the name of each slot
+		private final int depth;		// the most items the stack will hold
+
+		/**
+		 * Translate a program.
+		 * @param program the compiled program, optimized or not.
+		 */
+		public Program(CompiledProgram program) {
+			ops = fuse(program);
+			size = ops.length / 3 - 1;
+			names = new String[program.numNames()];
+			for(int i = 0; i < names.length; i++){
+				names[i] = program.getName(i);
+			}
+			depth = maxDepth(ops, size);
+		}
+
+		/**
+		 * Return the number of instructions, which is less than the number of symbols when some were fused.
+		 * @return the number of instructions.
+		 */
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Translate a program and prepare to run it from its first instruction.
+	 * @param program the compiled program, optimized or not.
+	 * @param computer the computer whose symbols are updated.
+	 * @throws IllegalArgumentException if the computer shares variables through globals.
+	 */
+	public FusedInterpreter(CompiledProgram program, Computer computer) {
+		this(new Program(program), computer);
+	}
+
+	/**
+	 * Prepare to run a translated program from its first instruction.
+	 * Variables that already have a value in the symbols of the computer start with that value.
+	 * @param program the translated program.
+	 * @param computer the computer whose symbols are updated.
+	 * @throws IllegalArgumentException if the computer shares variables through globals.
+	 */
+	public FusedInterpreter(Program program, Computer computer) {
+		if(computer.getGlobals() != null){
+			throw new IllegalArgumentException("Shared variables need ProgramExecutor");
+		}
+		this.computer = computer;
+		this.out = computer.getOutput();
+		this.ops = program.ops;
+		this.size = program.size;
+		this.names = program.names;
+
+		slots = new int[names.length];
+		defined = new boolean[names.length];
+		for(int i = 0; i < names.length; i++){
+			if(computer.symbols.containsKey(names[i])){
+				slots[i] = computer.symbols.get(names[i]);
+				defined[i] = true;
+			}
+		}
+		values = new int[program.depth];
+		refs = new int[program.depth];
+	}
+
+	/**
+	 * Translate a program into packed instructions, fusing the sequences that have a superinstruction.
+	 * No opcode inside a superinstruction can start another one, so every position is looked at
+	 * independently instead of jumping over the fused ones, which would make each step wait for
+	 * the one before. The instruction at every position is written, and the write position only
+	 * moves past the ones that start an instruction.
+	 * @param program the program.
+	 * @return the opcode and two operands of each instruction, and room for one more that is not part of it.
+	 */
+	static int[] fuse(CompiledProgram program) {
+		int n = program.size();
+		int size = n;
+		for(int i = 0; i < n; i++){
+			size -= LENGTHS[window(program, i)] - 1;
+		}
+
+		int[] ops = new int[size * 3 + 3]; //the opcodes inside the last instruction are written past it
+		int inside = 0; //number of opcodes left in the instruction being fused
+		for(int i = 0, k = 0; i < n; i++){
+			int w = window(program, i);
+			int next = i + 1 < n ? program.getOperand(i + 1) : 0;
+			ops[k] = OPCODES[w];
+			ops[k + 1] = program.getOperand(i);
+			ops[k + 2] = LENGTHS[w] == 1 ? program.getImmediate(i) : next; //the constant or the slot of y
+			k += inside == 0 ? 3 : 0;
+			inside = inside == 0 ? LENGTHS[w] - 1 : inside - 1;
+		}
+		return ops;
+	}
+
+	/**
+	 * Return the index into OPCODES and LENGTHS of the opcodes at a position of a program and the two after it.
+	 * @param program the program.
+	 * @param i the position.
+	 * @return the index.
+	 */
+	private static int window(CompiledProgram program, int i) {
+		int n = program.size();
+		int op1 = i + 1 < n ? program.getOpcode(i + 1) : -1;
+		int op2 = i + 2 < n ? program.getOpcode(i + 2) : -1;
+		return (program.getOpcode(i) * ROW + op1 + 1) * ROW + op2 + 1;
+	}
+
+	//The instruction and the number of opcodes it replaces, for each opcode and the two after it,
+	//-1 past the end. Tables instead of nested switches, because the opcodes of a program are too
+	//random for the branches to be predicted, and translating would cost as much as running.
+	private static final int ROW = CompiledProgram.NUM_OPCODES + 1;
+	private static final byte[] OPCODES = new byte[CompiledProgram.NUM_OPCODES * ROW * ROW];
+	private static final byte[] LENGTHS = new byte[OPCODES.length];
+	//how many items each instruction adds to the stack
+	private static final byte[] EFFECTS = {1, 1, -1, -1, -1, -1, -2, -2, -2, -2, -2, -1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 0};
+
+	static {
+		for(int op0 = 0; op0 < CompiledProgram.NUM_OPCODES; op0++){
+			for(int op1 = -1; op1 < CompiledProgram.NUM_OPCODES; op1++){
+				for(int op2 = -1; op2 < CompiledProgram.NUM_OPCODES; op2++){
+					int w = (op0 * ROW + op1 + 1) * ROW + op2 + 1;
+					int fused = op0 == PUSH_SYM ? superinstruction(op1, op2) : -1;
+					OPCODES[w] = (byte) (fused == -1 ? op0 : fused);
+					LENGTHS[w] = (byte) (fused == -1 ? 1 : fused == PRINT_VAR ? 2 : 3);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the superinstruction for a PUSH_SYM followed by two opcodes.
+	 * @param op1 the opcode after it.
+	 * @param op2 the opcode after that.
+	 * @return the superinstruction, -1 if there is none.
+	 */
+	private static int superinstruction(int op1, int op2) {
+		if(op1 == PRINT){
+			return PRINT_VAR; //whatever follows
+		}
+		if(op1 == PUSH_INT){
+			switch(op2){
+				case ASSIGN: return SET;
+				case ADD_ASSIGN: return INC;
+				case SUB_ASSIGN: return DEC;
+				case ADD: return ADD_CONST;
+				case SUB: return SUB_CONST;
+				case MUL: return MUL_CONST;
+				case DIV: return DIV_CONST;
+			}
+		}
+		else if(op1 == PUSH_SYM){
+			switch(op2){
+				case ASSIGN: return COPY;
+				case ADD_ASSIGN: return ADD_VAR;
+				case SUB_ASSIGN: return SUB_VAR;
+				case MUL_ASSIGN: return MUL_VAR;
+				case DIV_ASSIGN: return DIV_VAR;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the most items the stack will hold, so it never has to grow.
+	 * @param ops the instructions.
+	 * @param size the number of instructions.
+	 * @return the largest stack size, at least 1.
+	 */
+	private static int maxDepth(int[] ops, int size) {
+		int depth = 0;
+		int max = 1;
+		for(int i = 0; i < size; i++){
+			depth = Math.max(depth + EFFECTS[ops[i * 3]], 0); //the program fails when it goes below 0
+			max = Math.max(max, depth);
+		}
+		return max;
+	}
+
+	/**
+	 * Process the specified number of instructions from the program.
+	 * Update the stack and the variables of this interpreter appropriately.
+	 * @param numSymbols the number of instructions to be processed.
+	 * @return the number of instructions remaining.
+	 * @throws NullPointerException if the stack runs out or an identifier has no value.
+	 */
+	public int process(int numSymbols) {
+		int end = Math.min(size, pc + numSymbols);
+		int[] ops = this.ops;
+		int[] values = this.values;
+		int[] refs = this.refs;
+		int[] slots = this.slots;
+		int sp = this.sp;
+
+		try {
+			for(; pc < end; pc++){
+				int i = pc * 3;
+				int a = ops[i + 1];
+				int b = ops[i + 2];
+				int item1;
+				int item2;
+
+				switch(ops[i]){
+					case PUSH_INT:
+						values[sp] = a;
+						refs[sp++] = -1;
+						break;
+					case PUSH_SYM:
+						refs[sp++] = a;
+						break;
+					case ADD:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						values[sp - 1] = value(values, refs, sp - 1) + item1;
+						refs[sp - 1] = -1;
+						break;
+					case SUB:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						values[sp - 1] = value(values, refs, sp - 1) - item1;
+						refs[sp - 1] = -1;
+						break;
+					case MUL:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						values[sp - 1] = value(values, refs, sp - 1) * item1;
+						refs[sp - 1] = -1;
+						break;
+					case DIV:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						values[sp - 1] = value(values, refs, sp - 1) / item1;
+						refs[sp - 1] = -1;
+						break;
+					case ASSIGN:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						sp--;
+						if(refs[sp] != -1){
+							store(refs[sp], item1);
+						}
+						else{
+							storeExtra(Integer.toString(values[sp]), item1); //Computer.process() uses the integer as the name
+						}
+						break;
+					case ADD_ASSIGN:
+					case SUB_ASSIGN:
+					case MUL_ASSIGN:
+					case DIV_ASSIGN:
+						if(sp == 0) throw empty();
+						int right = refs[sp - 1];
+						item1 = value(values, refs, --sp);
+						if(sp == 0) throw empty();
+						int left = refs[sp - 1];
+						item2 = value(values, refs, --sp);
+						int result = compute(ops[i], item2, item1);
+						int key = left != -1 ? left : right; //the last identifier popped is the one that gets assigned
+						if(key != -1){
+							store(key, result);
+						}
+						else{
+							storeExtra("", result); //Computer.process() stores it under the empty key
+						}
+						break;
+					case PRINT:
+						if(sp == 0) throw empty();
+						item1 = value(values, refs, --sp);
+						if(a == -1){
+							out.println(item1);
+						}
+						else{
+							out.println(names[a]); //a literal, as it was written
+						}
+						break;
+					case INC:
+						store(a, read(a) + b);
+						break;
+					case DEC:
+						store(a, read(a) - b);
+						break;
+					case SET:
+						store(a, b);
+						break;
+					case COPY:
+						store(a, read(b));
+						break;
+					case ADD_VAR:
+						item1 = read(b);
+						store(a, read(a) + item1);
+						break;
+					case SUB_VAR:
+						item1 = read(b);
+						store(a, read(a) - item1);
+						break;
+					case MUL_VAR:
+						item1 = read(b);
+						store(a, read(a) * item1);
+						break;
+					case DIV_VAR:
+						item1 = read(b);
+						store(a, read(a) / item1);
+						break;
+					case PRINT_VAR:
+						out.println(read(a));
+						break;
+					case ADD_CONST:
+						values[sp] = read(a) + b;
+						refs[sp++] = -1;
+						break;
+					case SUB_CONST:
+						values[sp] = read(a) - b;
+						refs[sp++] = -1;
+						break;
+					case MUL_CONST:
+						values[sp] = read(a) * b;
+						refs[sp++] = -1;
+						break;
+					case DIV_CONST:
+						values[sp] = read(a) / b;
+						refs[sp++] = -1;
+						break;
+				}
+			}
+		}
+		catch(RuntimeException e) {
+			publish(); //what it did before it failed goes back to the computer, as with ProgramExecutor
+			out.flush(); //and so do the lines it printed
+			throw e;
+		}
+		finally {
+			this.sp = sp;
+		}
+
+		if(pc == size){
+			publish(); //the final state goes back to the computer
+			out.flush();
+		}
+		return remaining();
+	}
+
+	/**
+	 * Compute a compound assignment.
+	 * @param opcode ADD_ASSIGN, SUB_ASSIGN, MUL_ASSIGN or DIV_ASSIGN.
+	 * @param item2 the second operand popped.
+	 * @param item1 the first operand popped.
+	 * @return the new value.
+	 */
+	private static int compute(int opcode, int item2, int item1) {
+		switch(opcode){
+			case ADD_ASSIGN: return item2 + item1;
+			case SUB_ASSIGN: return item2 - item1;
+			case MUL_ASSIGN: return item2 * item1;
+			default: return item2 / item1;
+		}
+	}
+
+	/**
+	 * Return the value of an item on the stack.
+	 * @param values the integers on the stack.
+	 * @param refs the slots of the identifiers on the stack.
+	 * @param index the position of the item.
+	 * @return the integer value.
+	 * @throws NullPointerException if the item is an identifier with no value.
+	 */
+	private int value(int[] values, int[] refs, int index) {
+		return refs[index] == -1 ? values[index] : read(refs[index]);
+	}
+
+	/**
+	 * Return the value of a variable.
+	 * @param slot the slot of the variable.
+	 * @return the integer value.
+	 * @throws NullPointerException if the variable has no value.
+	 */
+	private int read(int slot) {
+		if(!defined[slot]){
+			throw new NullPointerException("Undefined symbol " + names[slot]);
+		}
+		return slots[slot];
+	}
+
+	/**
+	 * Set a variable.
+	 * @param slot the slot of the variable.
+	 * @param value the new value.
+	 */
+	private void store(int slot, int value) {
+		slots[slot] = value;
+		defined[slot] = true;
+	}
+
+	/**
+	 * Set a variable whose name can't appear in the program, so it is never read.
+	 * @param name the name.
+	 * @param value the new value.
+	 */
+	private void storeExtra(String name, int value) {
+		if(extraIndex == null){
+			extraIndex = new IntSymbolTable(4);
+		}
+		if(extraIndex.containsKey(name)){
+			extraValues[extraIndex.get(name)] = value;
+			return;
+		}
+		int n = extraNames.length;
+		extraNames = Arrays.copyOf(extraNames, n + 1);
+		extraValues = Arrays.copyOf(extraValues, n + 1);
+		extraNames[n] = name;
+		extraValues[n] = value;
+		extraIndex.put(name, n);
+	}
+
+	/**
+	 * Return the exception thrown when the stack runs out, the same as ValueStack's.
+	 * @return the exception.
+	 */
+	private static NullPointerException empty() {
+		return new NullPointerException("No more items");
+	}
+
+	/**
+	 * Copy the value of every variable into the symbols of the computer.
+	 * This is done when the program finishes or fails.
+	 */
+	public void publish() {
+		IntSymbolTable symbols = computer.symbols;
+		for(int i = 0; i < names.length; i++){
+			if(defined[i]){
+				symbols.put(names[i], slots[i]);
+			}
+		}
+		for(int i = 0; i < extraNames.length; i++){
+			symbols.put(extraNames[i], extraValues[i]);
+		}
+	}
+
+	/**
+	 * Return the number of instructions that have not been processed yet.
+	 * @return the number of instructions remaining.
+	 */
+	public int remaining() {
+		return size - pc;
+	}
+
+	/**
+	 * Return the number of instructions, which is less than the number of symbols when some were fused.
+	 * @return the number of instructions.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Send the output of print statements somewhere other than the output of the computer.
+	 * @param out the sink to print to.
+	 */
+	public void setOutput(OutputSink out) {
+		this.out = out;
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		CompiledProgram p1 = CompiledProgram.compile(Benchmarks.toNodes("x 5 = y x = x 1 += y x *= x print y 2 + print 3 4 + print"));
+		Computer c1 = new Computer();
+		CaptureSink out = new CaptureSink();
+		c1.setOutput(out);
+		FusedInterpreter f1 = new FusedInterpreter(p1, c1);
+
+		if(f1.size() == 11 && f1.ops[0] == SET && f1.ops[3] == COPY && f1.ops[6] == INC && f1.ops[9] == MUL_VAR && f1.ops[12] == PRINT_VAR && f1.ops[15] == ADD_CONST) {
+			System.out.println("Yay 1");
+		}
+
+		while(f1.remaining() > 0){
+			f1.process(2);
+		}
+		String n = System.lineSeparator();
+
+		if(out.getOutput().equals("6" + n + "32" + n + "7" + n) && c1.symbols.get("x") == 6 && c1.symbols.get("y") == 30) {
+			System.out.println("Yay 2");
+		}
+
+		FusedInterpreter f2 = new FusedInterpreter(CompiledProgram.compile(Benchmarks.toNodes("5 3 = 2 4 += z print")), new Computer());
+		try {
+			f2.process(10);
+		}
+		catch(NullPointerException e) {
+			if(e.getMessage().equals("Undefined symbol z") && f2.extraNames.length == 2 && f2.extraValues[0] == 3 && f2.extraValues[1] == 6) {
+				System.out.println("Yay 3");
+			}
+		}
+
+		Computer c3 = new Computer();
+		CaptureSink out3 = new CaptureSink();
+		c3.setOutput(out3);
+		FusedInterpreter f3 = new FusedInterpreter(CompiledProgram.compile(Benchmarks.toNodes("x 10 = x 3 -= y 4 = x y -= x 2 - print")), c3);
+		f3.process(100);
+
+		if(f3.ops[3] == DEC && f3.ops[9] == SUB_VAR && f3.ops[12] == SUB_CONST && out3.getOutput().equals("1" + n) && c3.symbols.get("x") == 3) {
+			System.out.println("Yay 4");
+		}
+	}
+}
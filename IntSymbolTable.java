@@ -0,0 +1,268 @@
+/**
+ * SymbolTable implementation with linear-probing hash table, specialized for int values.
+ * Keys and values are kept in parallel arrays, so nothing is boxed and
+ * replacing the value of an existing key doesn't allocate.
+ * @author Quang Vo
+ */
+class IntSymbolTable {
+	private static final String TOMBSTONE = new String("tombstone"); //compared by reference only
+
+	private String[] keys;		//the keys, null if empty or TOMBSTONE if removed
+	private int[] values;		//the value of the key at the same index
+	private int numOfElements;	//number of key-value pairs in the symbol table
+	private int numOfTombstones;	//number of removed positions not reused yet
+
+	/**
+	 * Initialize an empty symbol table with the specified initial capacity.
+	 * @param size the specified initial capacity.
+	 */
+	public IntSymbolTable(int size) {
+		keys = new String[size];
+		values = new int[size];
+		numOfElements = 0;
+	}
+
+	/**
+	 * Return the capacity of the symbol table.
+	 * @return the capacity.
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Return the number of key-value pairs in the symbol table.
+	 * @return the number of key-value pairs.
+	 */
+	public int size() {
+		return numOfElements;
+	}
+
+	/**
+	 * Insert the key-value pair into the symbol table.
+	 * Use linear probing if that location of key is in use.
+	 * Replace the old value in place if the key already exists in the table.
+	 * Double the capacity and rehash if the table is >= 80% full. Tombstones count
+	 * toward the load too: if they bring it to 80%, the table is rehashed at the same
+	 * capacity to clear them, so there is always an empty index to end a probe.
+	 * @param k the key.
+	 * @param v the value.
+	 * @return true if the key was already in the table, false if it was added.
+	 */
+	public boolean put(String k, int v) {
+		int pos = Math.abs(k.hashCode()) % keys.length; //get the pos index
+		int free = -1; //first tombstone seen, reused if the key isn't found
+
+		while(keys[pos] != null){
+			if(keys[pos] == TOMBSTONE){
+				if(free == -1){
+					free = pos;
+				}
+			}
+			else if(keys[pos].equals(k)){ //if same key, replace the value
+				values[pos] = v;
+				return true;
+			}
+			pos = (pos + 1) % keys.length; //move to the next index
+		}
+
+		if(free != -1){
+			pos = free;
+			numOfTombstones--; //the tombstone is reused
+		}
+		keys[pos] = k; //place value v at the location of key k
+		values[pos] = v;
+		numOfElements++;
+
+		//double the capacity the table if the table is >=80% full, then rehash.
+		if(this.size() >= ((double)(keys.length) * 4/5)){
+			rehash(keys.length * 2);
+		}
+		else if(this.size() + numOfTombstones >= ((double)(keys.length) * 4/5)){
+			rehash(keys.length); //mostly tombstones, clear them without growing
+		}
+		return false;
+	}
+
+	/**
+	 * Remove the specified key and its associated value from this symbol table.
+	 * Leave a tombstone at the removed position to not break the chain.
+	 * @param k the key.
+	 * @return true if the key was in the table, false otherwise.
+	 */
+	public boolean remove(String k) {
+		int pos = indexOf(k);
+		if(pos == -1){ //the key is not in the table
+			return false;
+		}
+		keys[pos] = TOMBSTONE; //set the pos index to be a tombstone
+		numOfTombstones++;
+		numOfElements--;
+		return true;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 * @param k the key.
+	 * @return the value associated with the specified key.
+	 * @throws NullPointerException if the key is not in the table.
+	 */
+	public int get(String k) {
+		int pos = indexOf(k);
+		if(pos == -1){
+			throw new NullPointerException("Undefined symbol " + k);
+		}
+		return values[pos];
+	}
+
+	/**
+	 * Check if the key is in the symbol table.
+	 * @param k the key.
+	 * @return true if the key is in the table, false otherwise.
+	 */
+	public boolean containsKey(String k) {
+		return indexOf(k) != -1;
+	}
+
+	/**
+	 * Find the index of the specified key.
+	 * @param k the key.
+	 * @return the index, -1 if the key is not in the table.
+	 */
+	private int indexOf(String k) {
+		int pos = Math.abs(k.hashCode()) % keys.length; //get the pos index
+
+		//check if the item is null or a tombstone or the key
+		while(keys[pos] != null && (keys[pos] == TOMBSTONE || !keys[pos].equals(k))){
+			pos = (pos + 1) % keys.length; //move to the next index
+		}
+		return keys[pos] == null ? -1 : pos;
+	}
+
+	/**
+	 * Check if there is a tombstone at the given index.
+	 * @param index the given index.
+	 * @return true if there is a tombstone, false otherwise.
+	 */
+	public boolean isTombstone(int index) {
+		return keys[index] == TOMBSTONE;
+	}
+
+	/**
+	 * Resize the symbol table to the given capacity.
+	 * Rehash all values.
+	 * @param size the given capacity.
+	 * @return true if the new size fits all the elements and an empty index, false otherwise.
+	 */
+	public boolean rehash(int size) {
+		if(size <= this.size()){ //check to see if the new size fits all the elements, with an empty index to end a probe
+			return false;
+		}
+
+		String[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new String[size];
+		values = new int[size];
+
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != null && oldKeys[i] != TOMBSTONE){ //check if the index is null or a tombstone
+				int pos = Math.abs(oldKeys[i].hashCode()) % size;
+				while(keys[pos] != null){
+					pos = (pos + 1) % size;
+				}
+				keys[pos] = oldKeys[i]; //rehash the elements
+				values[pos] = oldValues[i];
+			}
+		}
+		numOfTombstones = 0; //tombstones are not copied
+		return true;
+	}
+
+	/**
+	 * Create a string representation of the symbol table.
+	 * Without empty indices and tombstones, in the same format as SymbolTable.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < keys.length; i++) {
+			if(keys[i] != null && !isTombstone(i)) {
+				s.append(keys[i]).append(':').append(values[i]).append('\n');
+			}
+		}
+		return s.toString().trim();
+	}
+
+	/**
+	 * Create a string representation of the symbol table.
+	 * This shows all the elements including empty indices and tombstones.
+	 * @return the string representation.
+	 */
+	public String toStringDebug() {
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < keys.length; i++) {
+			s.append('[').append(i).append("]: ");
+			if(isTombstone(i)) {
+				s.append("tombstone");
+			}
+			else if(keys[i] == null) {
+				s.append("null");
+			}
+			else {
+				s.append(keys[i]).append(':').append(values[i]);
+			}
+			s.append('\n');
+		}
+		return s.toString().trim();
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		IntSymbolTable st1 = new IntSymbolTable(5);
+
+		st1.put("a",1);
+		st1.put("b",2);
+		st1.put("e",3);
+		st1.put("y",4);
+
+		if(st1.toString().equals("e:3\ny:4\na:1\nb:2") && st1.toStringDebug().equals("[0]: null\n[1]: e:3\n[2]: y:4\n[3]: null\n[4]: null\n[5]: null\n[6]: null\n[7]: a:1\n[8]: b:2\n[9]: null")) {
+			System.out.println("Yay 1");
+		}
+
+		if(st1.getCapacity() == 10 && st1.size() == 4 && st1.get("a") == 1 && st1.get("b") == 2 && st1.get("e") == 3 && st1.get("y") == 4) {
+			System.out.println("Yay 2");
+		}
+
+		if(st1.remove("e") && !st1.remove("e") && st1.size() == 3 && !st1.containsKey("e") && st1.get("y") == 4 && st1.isTombstone(1)) {
+			System.out.println("Yay 3");
+		}
+
+		st1.put("y", 40); //replaced in place, past the tombstone
+		if(st1.get("y") == 40 && st1.size() == 3 && st1.toString().equals("y:40\na:1\nb:2")) {
+			System.out.println("Yay 4");
+		}
+
+		try {
+			st1.get("e");
+		}
+		catch(NullPointerException e) {
+			if(st1.rehash(2) == false && st1.rehash(4) == true && st1.toStringDebug().equals("[0]: null\n[1]: y:40\n[2]: a:1\n[3]: b:2")) {
+				System.out.println("Yay 5");
+			}
+		}
+
+		IntSymbolTable st2 = new IntSymbolTable(5);
+		for(int i = 0; i < 10000; i++){ //churn, which used to leave only tombstones and hang
+			st2.put("k" + i, i);
+			st2.remove("k" + i);
+		}
+		st2.put("last", 1);
+
+		if(st2.size() == 1 && st2.getCapacity() == 5 && st2.get("last") == 1 && !st2.containsKey("k0") && !st2.rehash(1)) {
+			System.out.println("Yay 6");
+		}
+	}
+}
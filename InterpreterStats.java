@@ -0,0 +1,308 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics about the programs run in this JVM, by Computer.process() and ProgramExecutor.
+ * Collection is off by default; turn it on with setEnabled(), through JMX, or
+ * with -Dpostfix.stats=true. While it is off, executors don't count anything,
+ * and while it is on they count in their own fields and add to the shared
+ * totals only every few thousand symbols and when the program finishes.
+ * @author Quang Vo
+ */
+class InterpreterStats implements InterpreterStatsMXBean {
+	private static final InterpreterStats GLOBAL = new InterpreterStats(Boolean.getBoolean("postfix.stats"));
+	private static final int OPCODES = CompiledProgram.NUM_OPCODES;	// number of opcodes
+	private static final int BUCKETS = 64;							// histogram buckets, one per power of two
+
+	private volatile boolean enabled;		// whether executors should collect
+	private final LongAdder tokens = new LongAdder();			// symbols processed
+	private final LongAdder programs = new LongAdder();		// programs finished
+	private final LongAdder hits = new LongAdder();			// name lookups in the symbols that found it
+	private final LongAdder misses = new LongAdder();			// name lookups in the symbols that didn't
+	private final AtomicLongArray operators = new AtomicLongArray(OPCODES);	// executions of each opcode
+	private final AtomicLong highWater = new AtomicLong();		// largest stack size seen
+	private final AtomicLongArray loadLatency = new AtomicLongArray(BUCKETS);		// load times
+	private final AtomicLongArray executeLatency = new AtomicLongArray(BUCKETS);	// execution times
+
+	/**
+	 * Create a set of statistics.
+	 * @param enabled whether to start collecting right away.
+	 */
+	InterpreterStats(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Return the statistics shared by the whole JVM.
+	 * @return the global statistics.
+	 */
+	public static InterpreterStats global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * Return the global statistics if they are being collected.
+	 * @return the global statistics, or null if collection is off.
+	 */
+	public static InterpreterStats active() {
+		return GLOBAL.enabled ? GLOBAL : null;
+	}
+
+	/**
+	 * Publish the global statistics as an MXBean named "postfix:type=InterpreterStats".
+	 * Registering more than once does nothing.
+	 * @throws JMException when the bean can't be registered.
+	 */
+	public static synchronized void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("postfix:type=InterpreterStats");
+		if(!server.isRegistered(name)){
+			server.registerMBean(GLOBAL, name);
+		}
+	}
+
+	/**
+	 * Add what an executor counted.
+	 * @param opcodeCounts the executions of each opcode; the array is not kept.
+	 * @param symbolHits name lookups in the symbols that found the name.
+	 * @param symbolMisses name lookups in the symbols that didn't.
+	 * @param stackHighWater the largest stack size the executor saw.
+	 */
+	void add(long[] opcodeCounts, long symbolHits, long symbolMisses, int stackHighWater) {
+		long total = 0;
+		for(int i = 0; i < OPCODES; i++){
+			if(opcodeCounts[i] != 0){
+				operators.addAndGet(i, opcodeCounts[i]);
+				total += opcodeCounts[i];
+			}
+		}
+		tokens.add(total);
+		hits.add(symbolHits);
+		misses.add(symbolMisses);
+		highWater.accumulateAndGet(stackHighWater, Math::max);
+	}
+
+	/**
+	 * Record the time it took to load a program.
+	 * @param nanos the load time.
+	 */
+	void recordLoad(long nanos) {
+		loadLatency.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * Record that a program finished, and the time it took to execute.
+	 * @param nanos the execution time.
+	 */
+	void recordExecute(long nanos) {
+		executeLatency.incrementAndGet(bucket(nanos));
+		programs.increment();
+	}
+
+	/**
+	 * Return the histogram bucket of a time.
+	 * @param nanos the time.
+	 * @return the bucket.
+	 */
+	private static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * Check if statistics are being collected.
+	 * @return true if enabled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turn the collection of statistics on or off.
+	 * Executors that are already running keep their setting.
+	 * @param enabled true to collect statistics.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Return the number of symbols processed.
+	 * @return the number of symbols.
+	 */
+	public long getTokensProcessed() {
+		return tokens.sum();
+	}
+
+	/**
+	 * Return the number of programs that ran to the end.
+	 * @return the number of programs.
+	 */
+	public long getProgramsRun() {
+		return programs.sum();
+	}
+
+	/**
+	 * Return how many times each operator was executed.
+	 * Pushes of literals and identifiers are counted under "literal" and "identifier",
+	 * and the fused increments made by the Optimizer under "increment".
+	 * @return the count of each operator, by symbol.
+	 */
+	public Map<String, Long> getOperatorCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		counts.put("literal", operators.get(CompiledProgram.PUSH_INT));
+		counts.put("identifier", operators.get(CompiledProgram.PUSH_SYM));
+		for(int i = CompiledProgram.ADD; i <= CompiledProgram.PRINT; i++){
+			counts.put(CompiledProgram.symbolOf(i), operators.get(i));
+		}
+		counts.put("increment", operators.get(CompiledProgram.INC));
+		return counts;
+	}
+
+	/**
+	 * Return the largest number of items that were on a program stack at once.
+	 * @return the high-water mark.
+	 */
+	public long getStackHighWaterMark() {
+		return highWater.get();
+	}
+
+	/**
+	 * Return the number of lookups of a name in the symbols of a computer that found it.
+	 * The compiled modes look up each name once, when the program starts, and
+	 * Computer.process() looks up a key each time it reads or assigns it.
+	 * @return the number of hits.
+	 */
+	public long getSymbolHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Return the number of lookups of a name in the symbols of a computer that didn't find it,
+	 * counted like the hits.
+	 * @return the number of misses.
+	 */
+	public long getSymbolMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Return the histogram of program load times.
+	 * @return the bucket counts.
+	 */
+	public long[] getLoadLatencyHistogram() {
+		return toArray(loadLatency);
+	}
+
+	/**
+	 * Return the histogram of program execution times.
+	 * @return the bucket counts.
+	 */
+	public long[] getExecuteLatencyHistogram() {
+		return toArray(executeLatency);
+	}
+
+	/**
+	 * Set every statistic back to zero.
+	 */
+	public void reset() {
+		tokens.reset();
+		programs.reset();
+		hits.reset();
+		misses.reset();
+		highWater.set(0);
+		for(int i = 0; i < OPCODES; i++){
+			operators.set(i, 0);
+		}
+		for(int i = 0; i < BUCKETS; i++){
+			loadLatency.set(i, 0);
+			executeLatency.set(i, 0);
+		}
+	}
+
+	/**
+	 * Copy a histogram.
+	 * @param histogram the histogram.
+	 * @return the bucket counts.
+	 */
+	private static long[] toArray(AtomicLongArray histogram) {
+		long[] counts = new long[histogram.length()];
+		for(int i = 0; i < counts.length; i++){
+			counts[i] = histogram.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Return the upper bound of the bucket that holds the given fraction of a histogram.
+	 * @param counts the bucket counts.
+	 * @param fraction the fraction, for example 0.99.
+	 * @return the time in nanoseconds, 0 if the histogram is empty.
+	 */
+	static long percentile(long[] counts, double fraction) {
+		long total = 0;
+		for(long c : counts){
+			total += c;
+		}
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++){
+			seen += counts[i];
+			if(total > 0 && seen >= fraction * total){
+				return i >= 62 ? Long.MAX_VALUE : 2L << i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Create a report of all the statistics.
+	 * @return the report.
+	 */
+	public String toString() {
+		long[] load = getLoadLatencyHistogram();
+		long[] execute = getExecuteLatencyHistogram();
+		StringBuilder s = new StringBuilder();
+		s.append("tokens processed: ").append(getTokensProcessed()).append('\n');
+		s.append("programs run: ").append(getProgramsRun()).append('\n');
+		s.append("operators: ").append(getOperatorCounts()).append('\n');
+		s.append("stack high-water mark: ").append(getStackHighWaterMark()).append('\n');
+		s.append("symbol hits: ").append(getSymbolHits()).append(", misses: ").append(getSymbolMisses()).append('\n');
+		s.append("load latency p50/p99 (ns, upper bound): ").append(percentile(load, 0.5)).append('/').append(percentile(load, 0.99)).append('\n');
+		s.append("execute latency p50/p99 (ns, upper bound): ").append(percentile(execute, 0.5)).append('/').append(percentile(execute, 0.99));
+		return s.toString();
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws JMException {
+		InterpreterStats stats = new InterpreterStats(true);
+		long[] counts = new long[OPCODES];
+		counts[CompiledProgram.PUSH_INT] = 4;
+		counts[CompiledProgram.ADD] = 2;
+		stats.add(counts, 3, 1, 7);
+		stats.add(counts, 0, 0, 5);
+		stats.recordExecute(1000);
+		stats.recordLoad(3000);
+
+		if(stats.getTokensProcessed() == 12 && stats.getOperatorCounts().get("+") == 4 && stats.getStackHighWaterMark() == 7 && stats.getSymbolHits() == 3 && stats.getSymbolMisses() == 1) {
+			System.out.println("Yay 1");
+		}
+
+		if(stats.getProgramsRun() == 1 && stats.getExecuteLatencyHistogram()[9] == 1 && stats.getLoadLatencyHistogram()[11] == 1 && percentile(stats.getExecuteLatencyHistogram(), 0.5) == 1024) {
+			System.out.println("Yay 2");
+		}
+
+		register();
+		if(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("postfix:type=InterpreterStats"))) {
+			System.out.println("Yay 3");
+		}
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Map;
+
+/**
+ * The JMX view of InterpreterStats, registered as "postfix:type=InterpreterStats".
+ * @author Quang Vo
+ */
+public interface InterpreterStatsMXBean {
+
+	/**
+	 * Check if statistics are being collected.
+	 * @return true if enabled, false otherwise.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Turn the collection of statistics on or off.
+	 * @param enabled true to collect statistics.
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Return the number of symbols processed.
+	 * @return the number of symbols.
+	 */
+	long getTokensProcessed();
+
+	/**
+	 * Return the number of programs that ran to the end.
+	 * @return the number of programs.
+	 */
+	long getProgramsRun();
+
+	/**
+	 * Return how many times each operator was executed.
+	 * @return the count of each operator, by symbol.
+	 */
+	Map<String, Long> getOperatorCounts();
+
+	/**
+	 * Return the largest number of items that were on a program stack at once.
+	 * @return the high-water mark.
+	 */
+	long getStackHighWaterMark();
+
+	/**
+	 * Return the number of lookups of a name in the symbols of a computer that found it.
+	 * The compiled modes look up each name once, when the program starts, and
+	 * Computer.process() looks up a key each time it reads or assigns it.
+	 * @return the number of hits.
+	 */
+	long getSymbolHits();
+
+	/**
+	 * Return the number of lookups of a name in the symbols of a computer that didn't find it,
+	 * counted like the hits.
+	 * @return the number of misses.
+	 */
+	long getSymbolMisses();
+
+	/**
+	 * Return the histogram of program load times.
+	 * Bucket i counts loads that took from 2^i up to 2^(i+1) nanoseconds.
+	 * @return the bucket counts.
+	 */
+	long[] getLoadLatencyHistogram();
+
+	/**
+	 * Return the histogram of program execution times, with the same buckets as the load histogram.
+	 * @return the bucket counts.
+	 */
+	long[] getExecuteLatencyHistogram();
+
+	/**
+	 * Set every statistic back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs a whole program file and reports how long loading and executing took.
+ * The output of print statements is thrown away so it doesn't dominate the timing.
+ * Modes:
+ *   legacy    fileToNodeQueue() then Computer.process(), as in runProgram
+ *   compiled  CompiledProgram.compileFile() then ProgramExecutor, or the ProgramCache with -Dpostfix.cache
+ *   optimized the same, with the Optimizer run before executing
+ *   fused     the same as optimized, executed by the FusedInterpreter
+ *   bytecode  the same as optimized, compiled by the BytecodeCompiler
+ *   binary    BinaryProgram.load() of a file made by ProgramConverter, then ProgramExecutor
+ *   streaming Computer.runStreaming(), where loading and executing are interleaved
+ *   pipelined Computer.runPipelined(), where loading runs on another thread at the same time
+ * Run with: java MacroBenchmark [file] [legacy|compiled|optimized|fused|bytecode|binary|streaming|pipelined] [runs]
+ * @author Quang Vo
+ */
+class MacroBenchmark {
+
+	/**
+	 * Counters read before and after a phase.
+	 */
+	static class Sample {
+		final long nanos;		// System.nanoTime()
+		final long allocated;	// bytes allocated by this thread, -1 if unknown
+		final long gcCount;	// number of collections so far
+		final long gcMillis;	// time spent in collections so far
+
+		/**
+		 * Read the counters now.
+		 */
+		Sample() {
+			long count = 0;
+			long millis = 0;
+			for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+				count += Math.max(0, gc.getCollectionCount());
+				millis += Math.max(0, gc.getCollectionTime());
+			}
+			this.gcCount = count;
+			this.gcMillis = millis;
+			this.allocated = Benchmarks.allocatedBytes();
+			this.nanos = System.nanoTime();
+		}
+
+		/**
+		 * Describe what happened between an earlier sample and this one.
+		 * @param phase the name of the phase.
+		 * @param before the earlier sample.
+		 * @param symbols the number of symbols handled in the phase.
+		 * @return the report line.
+		 */
+		String since(String phase, Sample before, long symbols) {
+			double seconds = (nanos - before.nanos) / 1e9;
+			double megabytes = (allocated - before.allocated) / 1e6;
+			return String.format("  %-8s %9.1f ms %14.0f symbols/s %9.1f MB allocated (%8.1f MB/s) %4d GCs %6d ms in GC",
+					phase, seconds * 1e3, symbols / seconds, megabytes, megabytes / seconds,
+					gcCount - before.gcCount, gcMillis - before.gcMillis);
+		}
+	}
+
+	/**
+	 * Run a file once in the given mode and print a report.
+	 * @param filename the program file.
+	 * @param mode legacy, compiled, optimized, fused, bytecode, binary, streaming or pipelined.
+	 * @throws IOException when the file can't be read.
+	 */
+	public static void runOnce(String filename, String mode) throws IOException {
+		Computer computer = new Computer();
+		computer.setOutput(OutputSink.NULL);
+		Sample start = new Sample();
+
+		if(mode.equals("legacy")){
+			Node<String> input = Computer.fileToNodeQueue(filename);
+			Sample loaded = new Sample();
+			long symbols = 0;
+			for(Node<String> n = input; n != null; n = n.getNext()){
+				symbols++;
+			}
+			while(input != null){
+				input = computer.process(input, 10);
+			}
+			Sample done = new Sample();
+			System.out.println(loaded.since("load", start, symbols));
+			System.out.println(done.since("execute", loaded, symbols));
+			System.out.println(done.since("total", start, symbols));
+		}
+		else if(mode.equals("compiled") || mode.equals("optimized") || mode.equals("fused") || mode.equals("bytecode") || mode.equals("binary")){
+			CompiledProgram program = mode.equals("binary") ? BinaryProgram.load(filename) : ProgramCache.load(filename);
+			long symbols = program.size();
+			if(!mode.equals("compiled") && !mode.equals("binary")){
+				program = Optimizer.optimize(program);
+			}
+			//translating and compiling are part of loading
+			FusedInterpreter.Program fused = mode.equals("fused") ? new FusedInterpreter.Program(program) : null;
+			BytecodeProgram bytecode = mode.equals("bytecode") ? BytecodeCompiler.compile(program) : null;
+			if(mode.equals("bytecode") && bytecode == null){
+				throw new IllegalArgumentException(filename + " can't be compiled to bytecode");
+			}
+			Sample loaded = new Sample();
+			if(bytecode != null){
+				bytecode.run(computer);
+			}
+			else if(fused != null){
+				FusedInterpreter interpreter = new FusedInterpreter(fused, computer);
+				while(interpreter.remaining() > 0){
+					interpreter.process(10);
+				}
+			}
+			else{
+				ProgramExecutor executor = new ProgramExecutor(program, computer);
+				while(executor.remaining() > 0){
+					executor.process(10);
+				}
+			}
+			Sample done = new Sample();
+			System.out.println(loaded.since("load", start, symbols));
+			System.out.println(done.since("execute", loaded, symbols));
+			System.out.println(done.since("total", start, symbols));
+		}
+		else if(mode.equals("streaming")){
+			computer.runStreaming(filename, 4096);
+			Sample done = new Sample();
+			System.out.println(done.since("total", start, CompiledProgram.compileFile(filename).size()));
+		}
+		else if(mode.equals("pipelined")){
+			computer.runPipelined(filename, 256, 16);
+			Sample done = new Sample();
+			System.out.println(done.since("total", start, CompiledProgram.compileFile(filename).size()));
+		}
+		else{
+			throw new IllegalArgumentException("Unknown mode " + mode);
+		}
+	}
+
+	/**
+	 * The runner entry point.
+	 * @param args the file, the mode and the number of runs.
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1 || args.length > 3) {
+			System.out.println("Usage: java MacroBenchmark [file] [legacy|compiled|optimized|fused|bytecode|binary|streaming|pipelined] [runs]");
+			System.exit(0);
+		}
+
+		String mode = args.length > 1 ? args[1] : "compiled";
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		try {
+			for(int i = 1; i <= runs; i++){ //the first runs include JIT warmup
+				System.out.println("Run " + i + " (" + mode + "):");
+				runOnce(args[0], mode);
+			}
+		}
+		catch(IOException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}
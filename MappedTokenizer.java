@@ -0,0 +1,382 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the symbols of a program file straight from a memory-mapped buffer.
+ * Symbols are classified from their bytes, literals are parsed in place, and
+ * a String is only created the first time a distinct identifier is seen.
+ * Large files are mapped one chunk at a time.
+ * @author Quang Vo
+ */
+class MappedTokenizer implements Closeable {
+	private static final int CHUNK = 1 << 30;	// largest region mapped at once
+
+	private final FileChannel channel;	// the program file
+	private final long fileSize;		// size of the file in bytes
+	private final int chunkSize;		// size of the regions mapped
+	private MappedByteBuffer buffer;	// the region being scanned
+	private long base;					// file offset of the start of the buffer
+	private int pos;					// position of the next byte in the buffer
+
+	private int start;		// buffer position of the current symbol
+	private int length;		// length of the current symbol
+	private int opcode;		// opcode of the current symbol
+	private int value;		// value of the current symbol if it is a literal
+	private boolean canonical;	// whether the literal is written the way Integer.toString() writes it
+
+	private int[] hashes = new int[64];			// hashes of the identifiers seen
+	private byte[][] names = new byte[64][];	// bytes of the identifiers seen
+	private String[] strings = new String[64];	// the identifiers seen
+	private int numNames = 0;					// number of identifiers seen
+
+	/**
+	 * Open and map a file.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public MappedTokenizer(String filename) throws IOException {
+		this(Paths.get(filename), CHUNK);
+	}
+
+	/**
+	 * Open a file and map it in regions of the given size.
+	 * @param path the file to be opened.
+	 * @param chunkSize the size of the regions mapped.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	MappedTokenizer(Path path, int chunkSize) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.fileSize = channel.size();
+		this.chunkSize = chunkSize;
+		map(0);
+	}
+
+	/**
+	 * Move to the next symbol.
+	 * @return true if there is a symbol, false at the end of the file.
+	 * @throws IOException when the file can't be read or a symbol is longer than a region.
+	 */
+	public boolean next() throws IOException {
+		while(true){
+			while(pos < buffer.limit() && isWhitespace(buffer.get(pos))){ //skip the whitespace before the symbol
+				pos++;
+			}
+			if(pos < buffer.limit()){
+				break;
+			}
+			if(base + pos >= fileSize){
+				return false;
+			}
+			map(base + pos);
+		}
+
+		start = pos;
+		while(pos < buffer.limit() && !isWhitespace(buffer.get(pos))){
+			pos++;
+		}
+		if(pos == buffer.limit() && base + pos < fileSize){ //the symbol continues in the next region
+			if(start == 0){
+				throw new IOException("Symbol longer than " + chunkSize + " bytes at offset " + base);
+			}
+			map(base + start);
+			return next();
+		}
+
+		length = pos - start;
+		classify();
+		return true;
+	}
+
+	/**
+	 * Return the opcode of the current symbol.
+	 * @return the CompiledProgram opcode.
+	 */
+	public int opcode() {
+		return opcode;
+	}
+
+	/**
+	 * Return the kind of the current symbol.
+	 * @return LITERAL, IDENTIFIER, INT_OP, ASSIGN_OP or PRINT, as in Token.
+	 */
+	public int kind() {
+		return Token.kindOf(opcode);
+	}
+
+	/**
+	 * Return the value of the current symbol.
+	 * @return the value, 0 if the symbol is not a literal.
+	 */
+	public int value() {
+		return value;
+	}
+
+	/**
+	 * Check if the current literal is written the way Integer.toString() writes its value.
+	 * @return false for literals like "007", "+5" or "-0", true otherwise.
+	 */
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 * Return the file offset of the current symbol.
+	 * @return the offset in bytes.
+	 */
+	public long offset() {
+		return base + start;
+	}
+
+	/**
+	 * Return the length of the current symbol.
+	 * @return the length in bytes.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Return the current symbol as a String.
+	 * Identifiers are interned, so this only allocates the first time an identifier is seen.
+	 * Literals are returned as written.
+	 * @return the text of the symbol.
+	 */
+	public String text() {
+		if(opcode == CompiledProgram.PUSH_SYM){
+			return identifier();
+		}
+		if(opcode == CompiledProgram.PUSH_INT && canonical){
+			return Integer.toString(value);
+		}
+		if(opcode == CompiledProgram.PUSH_INT){
+			byte[] bytes = new byte[length];
+			for(int i = 0; i < length; i++){
+				bytes[i] = buffer.get(start + i);
+			}
+			return new String(bytes, StandardCharsets.US_ASCII); //as written
+		}
+		return CompiledProgram.symbolOf(opcode);
+	}
+
+	/**
+	 * Unmap the buffer and close the file.
+	 * @throws IOException when the file can't be closed.
+	 */
+	public void close() throws IOException {
+		buffer = null;
+		channel.close();
+	}
+
+	/**
+	 * Map the region of the file starting at the given offset.
+	 * @param offset the file offset.
+	 * @throws IOException when the file can't be read.
+	 */
+	private void map(long offset) throws IOException {
+		long size = Math.min(chunkSize, fileSize - offset);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		base = offset;
+		pos = 0;
+	}
+
+	/**
+	 * Work out the opcode, and the value of a literal, from the bytes of the current symbol.
+	 */
+	private void classify() {
+		value = 0;
+		byte first = buffer.get(start);
+
+		if(length == 1){
+			switch(first){
+				case '+': opcode = CompiledProgram.ADD; return;
+				case '-': opcode = CompiledProgram.SUB; return;
+				case '*': opcode = CompiledProgram.MUL; return;
+				case '/': opcode = CompiledProgram.DIV; return;
+				case '=': opcode = CompiledProgram.ASSIGN; return;
+			}
+		}
+		else if(length == 2 && buffer.get(start + 1) == '='){
+			switch(first){
+				case '+': opcode = CompiledProgram.ADD_ASSIGN; return;
+				case '-': opcode = CompiledProgram.SUB_ASSIGN; return;
+				case '*': opcode = CompiledProgram.MUL_ASSIGN; return;
+				case '/': opcode = CompiledProgram.DIV_ASSIGN; return;
+			}
+		}
+		else if(length == 5 && first == 'p' && buffer.get(start + 1) == 'r' && buffer.get(start + 2) == 'i'
+				&& buffer.get(start + 3) == 'n' && buffer.get(start + 4) == 't'){
+			opcode = CompiledProgram.PRINT;
+			return;
+		}
+
+		opcode = parseLiteral() ? CompiledProgram.PUSH_INT : CompiledProgram.PUSH_SYM;
+	}
+
+	/**
+	 * Parse the current symbol as an integer literal, the way Integer.parseInt() does for ASCII digits.
+	 * @return true if the symbol is a literal that fits in an int, false otherwise.
+	 */
+	private boolean parseLiteral() {
+		int i = start;
+		int end = start + length;
+		boolean negative = false;
+		byte first = buffer.get(i);
+		if(first == '-' || first == '+'){ //optional sign
+			negative = first == '-';
+			i++;
+			if(i == end){
+				return false;
+			}
+		}
+
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long result = 0;
+		for(; i < end; i++){
+			int digit = buffer.get(i) - '0';
+			if(digit < 0 || digit > 9){
+				return false; //not a digit
+			}
+			result = result * 10 + digit;
+			if(result > limit){
+				return false; //doesn't fit in an int
+			}
+		}
+		value = (int) (negative ? -result : result);
+		int digits = negative || first == '+' ? start + 1 : start;
+		canonical = first != '+' && (buffer.get(digits) != '0' || end - start == 1);
+		return true;
+	}
+
+	/**
+	 * Return the interned String of the current identifier, creating it the first time it is seen.
+	 * @return the identifier.
+	 */
+	private String identifier() {
+		int hash = 1;
+		for(int i = start; i < start + length; i++){
+			hash = 31 * hash + buffer.get(i);
+		}
+
+		int mask = hashes.length - 1;
+		int slot = hash & mask;
+		while(names[slot] != null){ //linear probing
+			if(hashes[slot] == hash && sameBytes(names[slot])){
+				return strings[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++){
+			bytes[i] = buffer.get(start + i);
+		}
+		String name = new String(bytes, StandardCharsets.UTF_8);
+		hashes[slot] = hash;
+		names[slot] = bytes;
+		strings[slot] = name;
+		numNames++;
+
+		if(numNames * 2 > hashes.length){ //keep the table at most half full
+			growNames();
+		}
+		return name;
+	}
+
+	/**
+	 * Check if the current symbol has the given bytes.
+	 * @param bytes the bytes of an identifier seen before.
+	 * @return true if they are the same, false otherwise.
+	 */
+	private boolean sameBytes(byte[] bytes) {
+		if(bytes.length != length){
+			return false;
+		}
+		for(int i = 0; i < length; i++){
+			if(bytes[i] != buffer.get(start + i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Double the size of the identifier table.
+	 */
+	private void growNames() {
+		int[] oldHashes = hashes;
+		byte[][] oldNames = names;
+		String[] oldStrings = strings;
+		hashes = new int[oldHashes.length * 2];
+		names = new byte[oldNames.length * 2][];
+		strings = new String[oldStrings.length * 2];
+
+		int mask = hashes.length - 1;
+		for(int i = 0; i < oldNames.length; i++){
+			if(oldNames[i] != null){
+				int slot = oldHashes[i] & mask;
+				while(names[slot] != null){
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = oldHashes[i];
+				names[slot] = oldNames[i];
+				strings[slot] = oldStrings[i];
+			}
+		}
+	}
+
+	/**
+	 * Check if a byte separates symbols, the same as Character.isWhitespace() for ASCII.
+	 * @param b the byte.
+	 * @return true if the byte is whitespace, false otherwise.
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Files.createTempFile("tokens", ".txt");
+		Files.write(file, " count 12 =\ncount -3 +=\r\n\tcount print +5 99999999999 /= count".getBytes(StandardCharsets.UTF_8));
+
+		MappedTokenizer t = new MappedTokenizer(file, 16); //tiny regions so symbols cross them
+		int[] opcodes = new int[16];
+		String[] texts = new String[16];
+		boolean[] canonical = new boolean[16];
+		int n = 0;
+		while(t.next()){
+			opcodes[n] = t.opcode();
+			texts[n] = t.text();
+			canonical[n] = t.isCanonical();
+			n++;
+		}
+		t.close();
+		Files.delete(file);
+
+		if(n == 12 && Arrays.equals(Arrays.copyOf(texts, n), new String[] {"count", "12", "=", "count", "-3", "+=", "count", "print", "+5", "99999999999", "/=", "count"})) {
+			System.out.println("Yay 1");
+		}
+
+		if(opcodes[0] == CompiledProgram.PUSH_SYM && opcodes[1] == CompiledProgram.PUSH_INT && opcodes[4] == CompiledProgram.PUSH_INT && opcodes[7] == CompiledProgram.PRINT && opcodes[9] == CompiledProgram.PUSH_SYM && opcodes[10] == CompiledProgram.DIV_ASSIGN) {
+			System.out.println("Yay 2");
+		}
+
+		if(texts[0] == texts[3] && texts[3] == texts[6] && texts[6] == texts[11]) { //the same identifier is only created once
+			System.out.println("Yay 3");
+		}
+
+		if(canonical[1] && canonical[4] && !canonical[8]) {
+			System.out.println("Yay 4");
+		}
+	}
+}
@@ -0,0 +1,274 @@
+import java.util.Arrays;
+
+/**
+ * Rewrites a compiled program into a shorter one that prints the same output
+ * and leaves the same final values in the symbols.
+ * It runs three passes over the opcodes:
+ *   constant folding   "3 2 + 4 *" becomes "20", except divisions by zero, which must still fail
+ *   increment fusion   "x c +=" and "x c -=" become one INC opcode
+ *   dead stores        "x c =" is removed when x is assigned again by "=" before anything reads it
+ * The program has no jumps, so each pass is a single walk over the opcodes.
+ * The steps of the optimized program no longer match the symbols of the file one to
+ * one, so the debug view and traces show the optimized steps. A removed store is never
+ * seen by the program, but it would have been seen by other computers if the variable
+ * were shared, so dead stores are kept when the computer has globals. It would also be
+ * left in the symbols if the program failed before the store that replaces it, so the
+ * symbols after a failure can differ from those of the original program.
+ * @author Quang Vo
+ */
+class Optimizer {
+
+	private int[] code;			// opcodes written so far
+	private int[] operands;		// their operands
+	private int[] immediates;	// their second operands
+	private int size;			// number of opcodes written
+
+	/**
+	 * Create an optimizer with room for a program.
+	 * @param capacity the number of opcodes of the program.
+	 */
+	private Optimizer(int capacity) {
+		code = new int[capacity];
+		operands = new int[capacity];
+		immediates = new int[capacity];
+	}
+
+	/**
+	 * Optimize a program with all the passes.
+	 * @param program the program.
+	 * @return the optimized program.
+	 */
+	public static CompiledProgram optimize(CompiledProgram program) {
+		return optimize(program, true);
+	}
+
+	/**
+	 * Optimize a program.
+	 * @param program the program.
+	 * @param removeDeadStores false to keep every "=", for programs whose variables may be shared.
+	 * @return the optimized program.
+	 */
+	public static CompiledProgram optimize(CompiledProgram program, boolean removeDeadStores) {
+		Optimizer optimizer = new Optimizer(program.size());
+		for(int pc = 0; pc < program.size(); pc++){
+			optimizer.add(program.getOpcode(pc), program.getOperand(pc), program.getImmediate(pc));
+		}
+		if(removeDeadStores){
+			optimizer.removeDeadStores(program.numNames());
+		}
+
+		String[] names = new String[program.numNames()];
+		boolean hasIncrement = false;
+		for(int i = 0; i < names.length; i++){
+			names[i] = program.getName(i);
+		}
+		for(int pc = 0; pc < optimizer.size; pc++){
+			hasIncrement |= optimizer.code[pc] == CompiledProgram.INC;
+		}
+		int n = optimizer.size;
+		return new CompiledProgram(Arrays.copyOf(optimizer.code, n), Arrays.copyOf(optimizer.operands, n),
+				hasIncrement ? Arrays.copyOf(optimizer.immediates, n) : null, names);
+	}
+
+	/**
+	 * Write an opcode, folding or fusing it with the opcodes just before it when possible.
+	 * The stack holds whatever the last opcodes pushed, so two literals just before an
+	 * operator are always its operands.
+	 * @param opcode the opcode.
+	 * @param operand its operand.
+	 * @param immediate its second operand.
+	 */
+	private void add(int opcode, int operand, int immediate) {
+		if(opcode >= CompiledProgram.ADD && opcode <= CompiledProgram.DIV && isPush(size - 2, CompiledProgram.PUSH_INT) && isPush(size - 1, CompiledProgram.PUSH_INT)){
+			int left = operands[size - 2];
+			int right = operands[size - 1];
+			if(opcode != CompiledProgram.DIV || right != 0){ //a division by zero has to throw when it runs
+				size -= 2;
+				add(CompiledProgram.PUSH_INT, fold(opcode, left, right), 0); //the result may fold again
+				return;
+			}
+		}
+
+		if((opcode == CompiledProgram.ADD_ASSIGN || opcode == CompiledProgram.SUB_ASSIGN) && isPush(size - 2, CompiledProgram.PUSH_SYM) && isPush(size - 1, CompiledProgram.PUSH_INT)){
+			int slot = operands[size - 2];
+			int constant = operands[size - 1];
+			size -= 2;
+			//x - c is x + (-c) in int arithmetic, even for Integer.MIN_VALUE
+			add(CompiledProgram.INC, slot, opcode == CompiledProgram.ADD_ASSIGN ? constant : -constant);
+			return;
+		}
+
+		code[size] = opcode;
+		operands[size] = operand;
+		immediates[size] = immediate;
+		size++;
+	}
+
+	/**
+	 * Check if the opcode at a position is the given push.
+	 * @param pc the position, may be negative.
+	 * @param push PUSH_INT or PUSH_SYM.
+	 * @return true if it is, false otherwise.
+	 */
+	private boolean isPush(int pc, int push) {
+		return pc >= 0 && code[pc] == push;
+	}
+
+	/**
+	 * Compute an operator on two literals, as the interpreter would.
+	 * @param opcode ADD, SUB, MUL or DIV.
+	 * @param left the second operand popped.
+	 * @param right the first operand popped.
+	 * @return the result.
+	 */
+	private static int fold(int opcode, int left, int right) {
+		switch(opcode){
+			case CompiledProgram.ADD: return left + right;
+			case CompiledProgram.SUB: return left - right;
+			case CompiledProgram.MUL: return left * right;
+			default: return left / right;
+		}
+	}
+
+	/**
+	 * Remove every "x c =" whose value is overwritten by a later "=" before it is read.
+	 * First the stack is simulated to find which identifiers are only the key of an "=",
+	 * and which operator pops each of the others: an identifier is read when it is popped,
+	 * not when it is pushed. Then the program is walked backward, tracking which variables
+	 * are assigned again before their next read.
+	 * If the stack would run out, the program fails when it runs and nothing is removed.
+	 * @param numNames the size of the name table.
+	 */
+	private void removeDeadStores(int numNames) {
+		boolean[] isKey = new boolean[size];	// whether the push at a position is the key of an "="
+		int[] keyOf = new int[size];			// for each "=", the position of the push of its key
+		int[] readFirst = new int[size];		// for each operator, the identifier it pops first, -1 if none
+		int[] readSecond = new int[size];		// for each operator, the identifier it pops second, -1 if none
+		int[] stack = new int[16];				// the position of the push of each item on the stack
+		int top = 0;
+
+		for(int pc = 0; pc < size; pc++){
+			int opcode = code[pc];
+			if(opcode == CompiledProgram.PUSH_INT || opcode == CompiledProgram.PUSH_SYM){
+				if(top == stack.length){
+					stack = Arrays.copyOf(stack, top * 2);
+				}
+				stack[top++] = pc;
+			}
+			else if(opcode == CompiledProgram.INC){
+				continue; //no stack effect
+			}
+			else{
+				int pops = opcode == CompiledProgram.PRINT ? 1 : 2;
+				if(top < pops){
+					return; //the program runs out of items, keep it as it is
+				}
+				readFirst[pc] = code[stack[top - 1]] == CompiledProgram.PUSH_SYM ? operands[stack[top - 1]] : -1;
+				readSecond[pc] = -1;
+				if(opcode == CompiledProgram.ASSIGN){
+					keyOf[pc] = stack[top - 2];
+					isKey[keyOf[pc]] = true;
+				}
+				else if(pops == 2 && code[stack[top - 2]] == CompiledProgram.PUSH_SYM){
+					readSecond[pc] = operands[stack[top - 2]];
+				}
+				top -= pops;
+				if(opcode <= CompiledProgram.DIV){ //arithmetic pushes its result
+					stack[top++] = pc;
+				}
+			}
+		}
+
+		boolean[] overwritten = new boolean[numNames];	// whether a variable is assigned again before it is read
+		boolean[] dead = new boolean[size];
+		int removed = 0;
+		for(int pc = size - 1; pc >= 0; pc--){
+			int opcode = code[pc];
+			if(opcode == CompiledProgram.ASSIGN && pc >= 2 && code[pc - 2] == CompiledProgram.PUSH_SYM && isKey[pc - 2] && code[pc - 1] == CompiledProgram.PUSH_INT){
+				int slot = operands[pc - 2];
+				if(overwritten[slot]){ //x is assigned again before anything reads it
+					dead[pc] = dead[pc - 1] = dead[pc - 2] = true;
+					removed += 3;
+				}
+				overwritten[slot] = true;
+				pc -= 2; //the key and value are done
+			}
+			else if(opcode == CompiledProgram.ASSIGN){
+				if(code[keyOf[pc]] == CompiledProgram.PUSH_SYM){
+					overwritten[operands[keyOf[pc]]] = true;
+				}
+				if(readFirst[pc] != -1){
+					overwritten[readFirst[pc]] = false; //the value is read before the key is written
+				}
+			}
+			else if(opcode == CompiledProgram.INC){
+				overwritten[operands[pc]] = false; //read, then written
+			}
+			else if(opcode != CompiledProgram.PUSH_INT && opcode != CompiledProgram.PUSH_SYM){
+				if(readFirst[pc] != -1){
+					overwritten[readFirst[pc]] = false; //read as it is popped
+				}
+				if(readSecond[pc] != -1){
+					overwritten[readSecond[pc]] = false; //a compound assignment reads its key before writing it
+				}
+			}
+		}
+
+		if(removed > 0){
+			int n = 0;
+			for(int pc = 0; pc < size; pc++){
+				if(!dead[pc]){
+					code[n] = code[pc];
+					operands[n] = operands[pc];
+					immediates[n] = immediates[pc];
+					n++;
+				}
+			}
+			size = n;
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		CompiledProgram p1 = Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes("3 2 + 4 * print 1 0 / print")));
+
+		if(p1.toString().equals("20 print 1 0 / print") && p1.size() == 6) {
+			System.out.println("Yay 1");
+		}
+
+		CompiledProgram p2 = Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes("x 5 = x 1 += x 2 -= x print")));
+
+		if(p2.toString().equals("x 5 = x 1 += x -2 += x print") && p2.size() == 7 && p2.getOpcode(3) == CompiledProgram.INC && p2.getImmediate(4) == -2) {
+			System.out.println("Yay 2");
+		}
+
+		CompiledProgram p3 = Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes("x 1 = y 2 = x 3 = y print x y = x 4 =")));
+
+		if(p3.toString().equals("y 2 = y print x y = x 4 =")) {
+			System.out.println("Yay 3");
+		}
+
+		CompiledProgram p4 = Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes("x 1 = x 2 =")), false);
+
+		if(p4.toString().equals("x 1 = x 2 =")) {
+			System.out.println("Yay 4");
+		}
+
+		String source = "z 3 = z z z -5 = = z print"; //the second z is read after "z -5 =" runs
+		Computer c1 = new Computer();
+		CaptureSink out1 = new CaptureSink();
+		c1.setOutput(out1);
+		c1.process(Benchmarks.toNodes(source), 20);
+		Computer c2 = new Computer();
+		CaptureSink out2 = new CaptureSink();
+		c2.setOutput(out2);
+		new ProgramExecutor(Optimizer.optimize(CompiledProgram.compile(Benchmarks.toNodes(source))), c2).process(20);
+
+		if(out2.getOutput().equals(out1.getOutput()) && out1.getOutput().equals("-5" + System.lineSeparator())) {
+			System.out.println("Yay 5");
+		}
+	}
+}
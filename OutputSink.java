@@ -0,0 +1,56 @@
+/**
+ * Where the output of print statements goes.
+ * Each printed value is written as one line.
+ * @author Quang Vo
+ */
+interface OutputSink {
+
+	/**
+	 * Print each line straight to System.out, as Computer always did.
+	 * System.out is looked up on every call, so System.setOut() still works.
+	 */
+	OutputSink STDOUT = new OutputSink() {
+		public void println(int value) {
+			System.out.println(value);
+		}
+
+		public void println(String text) {
+			System.out.println(text);
+		}
+
+		public void flush() {
+			System.out.flush();
+		}
+	};
+
+	/**
+	 * Throw all output away, for benchmarks.
+	 */
+	OutputSink NULL = new OutputSink() {
+		public void println(int value) {
+		}
+
+		public void println(String text) {
+		}
+
+		public void flush() {
+		}
+	};
+
+	/**
+	 * Print an integer on its own line.
+	 * @param value the integer.
+	 */
+	void println(int value);
+
+	/**
+	 * Print a string on its own line.
+	 * @param text the string.
+	 */
+	void println(String text);
+
+	/**
+	 * Write out anything that is still buffered.
+	 */
+	void flush();
+}
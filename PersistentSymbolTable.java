@@ -0,0 +1,345 @@
+import java.util.Arrays;
+
+/**
+ * An immutable symbol table implemented as a hash array mapped trie.
+ * put() and remove() return a new table that shares everything but the
+ * changed path with the old one, so keeping a table as a snapshot is O(1)
+ * and a change costs O(log32 n) new nodes.
+ * @author Quang Vo
+ * @param <T> the type of the value of PersistentSymbolTable.
+ */
+class PersistentSymbolTable<T> {
+	private static final int BITS = 5;					// hash bits used at each level
+	private static final int MASK = (1 << BITS) - 1;	// mask for the bits of one level
+	private static final PersistentSymbolTable<?> EMPTY = new PersistentSymbolTable<>(null, 0);
+
+	private final Object root;	// the root node, null if the table is empty
+	private final int size;	// number of key-value pairs in the symbol table
+
+	/**
+	 * A node with up to 32 children, where the bitmap tells which of the 32 are present.
+	 * A child is a TableEntry, another Branch, or a Collision.
+	 */
+	private static final class Branch {
+		final int bitmap;			// bit i is set if child i is present
+		final Object[] children;	// the children that are present, in order
+
+		Branch(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * A node for keys whose hashes are all the same.
+	 */
+	private static final class Collision {
+		final int hash;				// the hash of every key
+		final TableEntry<?,?>[] entries;	// the entries
+
+		Collision(int hash, TableEntry<?,?>[] entries) {
+			this.hash = hash;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * Create a table with the given root.
+	 * @param root the root node.
+	 * @param size the number of key-value pairs.
+	 */
+	private PersistentSymbolTable(Object root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Return the empty symbol table.
+	 * @param <T> the type of the values.
+	 * @return the empty table.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> PersistentSymbolTable<T> empty() {
+		return (PersistentSymbolTable<T>) EMPTY;
+	}
+
+	/**
+	 * Return the number of key-value pairs in the symbol table.
+	 * @return the number of key-value pairs.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 * @param k the key.
+	 * @return the value associated with the specified key.
+	 * @return null if the value is not in the table.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(String k) {
+		int hash = k.hashCode();
+		Object node = root;
+
+		for(int shift = 0; node != null; shift += BITS){
+			if(node instanceof TableEntry){
+				TableEntry<String,T> entry = (TableEntry<String,T>) node;
+				return entry.getKey().equals(k) ? entry.getValue() : null;
+			}
+			if(node instanceof Collision){
+				for(TableEntry<?,?> entry : ((Collision) node).entries){
+					if(entry.getKey().equals(k)){
+						return (T) entry.getValue();
+					}
+				}
+				return null;
+			}
+			Branch branch = (Branch) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if((branch.bitmap & bit) == 0){
+				return null;
+			}
+			node = branch.children[Integer.bitCount(branch.bitmap & (bit - 1))];
+		}
+		return null;
+	}
+
+	/**
+	 * Return a table with the key-value pair inserted.
+	 * Replace the old value with the new value if the key already exists in the table.
+	 * This table is not changed.
+	 * @param k the key.
+	 * @param v the value.
+	 * @return the new table.
+	 */
+	public PersistentSymbolTable<T> put(String k, T v) {
+		boolean[] added = new boolean[1];
+		Object newRoot = put(root, 0, k.hashCode(), new TableEntry<String,T>(k, v), added);
+		return new PersistentSymbolTable<>(newRoot, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * Return a table without the specified key.
+	 * This table is not changed.
+	 * @param k the key.
+	 * @return the new table, or this table if the key is not in it.
+	 */
+	public PersistentSymbolTable<T> remove(String k) {
+		if(get(k) == null){
+			return this;
+		}
+		return new PersistentSymbolTable<>(remove(root, 0, k.hashCode(), k), size - 1);
+	}
+
+	/**
+	 * Insert an entry below a node.
+	 * @param node the node, null if there is none.
+	 * @param shift the hash bits already used above the node.
+	 * @param hash the hash of the key.
+	 * @param entry the entry to insert.
+	 * @param added set to true if the key was not already in the table.
+	 * @return the new node.
+	 */
+	private static Object put(Object node, int shift, int hash, TableEntry<String,?> entry, boolean[] added) {
+		if(node == null){
+			added[0] = true;
+			return entry;
+		}
+
+		if(node instanceof TableEntry){
+			TableEntry<?,?> old = (TableEntry<?,?>) node;
+			if(old.getKey().equals(entry.getKey())){
+				return entry; //same key, replace the value
+			}
+			added[0] = true;
+			return merge(shift, old.getKey().hashCode(), old, hash, entry);
+		}
+
+		if(node instanceof Collision){
+			Collision c = (Collision) node;
+			if(c.hash != hash){ //split the collision under a new branch
+				added[0] = true;
+				return merge(shift, c.hash, c, hash, entry);
+			}
+			for(int i = 0; i < c.entries.length; i++){
+				if(c.entries[i].getKey().equals(entry.getKey())){
+					TableEntry<?,?>[] entries = c.entries.clone();
+					entries[i] = entry;
+					return new Collision(hash, entries);
+				}
+			}
+			added[0] = true;
+			TableEntry<?,?>[] entries = Arrays.copyOf(c.entries, c.entries.length + 1);
+			entries[c.entries.length] = entry;
+			return new Collision(hash, entries);
+		}
+
+		Branch branch = (Branch) node;
+		int bit = 1 << ((hash >>> shift) & MASK);
+		int index = Integer.bitCount(branch.bitmap & (bit - 1));
+
+		if((branch.bitmap & bit) == 0){ //new child
+			added[0] = true;
+			Object[] children = new Object[branch.children.length + 1];
+			System.arraycopy(branch.children, 0, children, 0, index);
+			children[index] = entry;
+			System.arraycopy(branch.children, index, children, index + 1, branch.children.length - index);
+			return new Branch(branch.bitmap | bit, children);
+		}
+
+		Object[] children = branch.children.clone(); //copy only this path
+		children[index] = put(children[index], shift + BITS, hash, entry, added);
+		return new Branch(branch.bitmap, children);
+	}
+
+	/**
+	 * Make the smallest subtree that holds two nodes with different keys.
+	 * @param shift the hash bits already used.
+	 * @param hash1 the hash of the first node.
+	 * @param node1 the first node, an entry or a collision.
+	 * @param hash2 the hash of the second node.
+	 * @param node2 the second node, an entry.
+	 * @return the subtree.
+	 */
+	private static Object merge(int shift, int hash1, Object node1, int hash2, TableEntry<?,?> node2) {
+		if(hash1 == hash2){ //all hash bits are the same
+			if(node1 instanceof Collision){
+				Collision c = (Collision) node1;
+				TableEntry<?,?>[] entries = Arrays.copyOf(c.entries, c.entries.length + 1);
+				entries[c.entries.length] = node2;
+				return new Collision(hash1, entries);
+			}
+			return new Collision(hash1, new TableEntry<?,?>[] {(TableEntry<?,?>) node1, node2});
+		}
+
+		int index1 = (hash1 >>> shift) & MASK;
+		int index2 = (hash2 >>> shift) & MASK;
+		if(index1 == index2){
+			return new Branch(1 << index1, new Object[] {merge(shift + BITS, hash1, node1, hash2, node2)});
+		}
+		Object[] children = index1 < index2 ? new Object[] {node1, node2} : new Object[] {node2, node1};
+		return new Branch((1 << index1) | (1 << index2), children);
+	}
+
+	/**
+	 * Remove a key that is known to be below a node.
+	 * @param node the node.
+	 * @param shift the hash bits already used above the node.
+	 * @param hash the hash of the key.
+	 * @param k the key.
+	 * @return the new node, null if nothing is left.
+	 */
+	private static Object remove(Object node, int shift, int hash, String k) {
+		if(node instanceof TableEntry){
+			return null;
+		}
+
+		if(node instanceof Collision){
+			Collision c = (Collision) node;
+			if(c.entries.length == 2){
+				return c.entries[0].getKey().equals(k) ? c.entries[1] : c.entries[0];
+			}
+			TableEntry<?,?>[] entries = new TableEntry<?,?>[c.entries.length - 1];
+			int j = 0;
+			for(TableEntry<?,?> e : c.entries){
+				if(!e.getKey().equals(k)){
+					entries[j++] = e;
+				}
+			}
+			return new Collision(hash, entries);
+		}
+
+		Branch branch = (Branch) node;
+		int bit = 1 << ((hash >>> shift) & MASK);
+		int index = Integer.bitCount(branch.bitmap & (bit - 1));
+		Object child = remove(branch.children[index], shift + BITS, hash, k);
+
+		if(child != null){
+			if(branch.children.length == 1 && !(child instanceof Branch)){
+				return child; //pull a single entry up
+			}
+			Object[] children = branch.children.clone();
+			children[index] = child;
+			return new Branch(branch.bitmap, children);
+		}
+		if(branch.children.length == 1){
+			return null;
+		}
+		if(branch.children.length == 2 && !(branch.children[index ^ 1] instanceof Branch)){
+			return branch.children[index ^ 1]; //pull the other entry up
+		}
+		Object[] children = new Object[branch.children.length - 1];
+		System.arraycopy(branch.children, 0, children, 0, index);
+		System.arraycopy(branch.children, index + 1, children, index, children.length - index);
+		return new Branch(branch.bitmap & ~bit, children);
+	}
+
+	/**
+	 * Create a string representation of the symbol table, in the same format as SymbolTable.
+	 * The entries are in the order of the trie.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		append(s, root);
+		return s.toString().trim();
+	}
+
+	/**
+	 * Add the entries below a node to a string.
+	 * @param s the string being built.
+	 * @param node the node.
+	 */
+	private static void append(StringBuilder s, Object node) {
+		if(node instanceof TableEntry){
+			s.append(node).append('\n');
+		}
+		else if(node instanceof Collision){
+			for(TableEntry<?,?> e : ((Collision) node).entries){
+				s.append(e).append('\n');
+			}
+		}
+		else if(node instanceof Branch){
+			for(Object child : ((Branch) node).children){
+				append(s, child);
+			}
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		PersistentSymbolTable<Integer> t0 = PersistentSymbolTable.empty();
+		PersistentSymbolTable<Integer> t1 = t0.put("a", 1).put("b", 2);
+		PersistentSymbolTable<Integer> t2 = t1.put("a", 10);
+
+		if(t0.size() == 0 && t1.size() == 2 && t2.size() == 2 && t1.get("a") == 1 && t2.get("a") == 10 && t2.get("b") == 2 && t2.get("c") == null) {
+			System.out.println("Yay 1");
+		}
+
+		PersistentSymbolTable<Integer> big = t0;
+		for(int i = 0; i < 5000; i++){
+			big = big.put("v" + i, i);
+		}
+		PersistentSymbolTable<Integer> snapshot = big;
+		for(int i = 0; i < 5000; i += 2){
+			big = big.remove("v" + i);
+		}
+
+		boolean ok = snapshot.size() == 5000 && big.size() == 2500;
+		for(int i = 0; i < 5000; i++){
+			ok = ok && snapshot.get("v" + i) == i && (i % 2 == 0 ? big.get("v" + i) == null : big.get("v" + i) == i);
+		}
+		if(ok) {
+			System.out.println("Yay 2");
+		}
+
+		PersistentSymbolTable<Integer> c = t0.put("Aa", 1).put("BB", 2); //"Aa" and "BB" have the same hash
+		if(c.get("Aa") == 1 && c.get("BB") == 2 && c.remove("Aa").get("BB") == 2 && c.remove("Aa").size() == 1 && c.remove("BB").toString().equals("Aa:1")) {
+			System.out.println("Yay 3");
+		}
+	}
+}
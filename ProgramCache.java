@@ -0,0 +1,510 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of compiled programs on disk, so a program that is run again is not tokenized again.
+ * Each compiled program is stored in a file named after the SHA-256 hash of the program text,
+ * so copies of the same program share one entry. A small index file per program file remembers
+ * the size, the modification time and the hash the file had when it was last seen; while those
+ * still match, the program is loaded without reading the program file at all. Otherwise the file
+ * is hashed again, and only compiled if no entry has that hash.
+ * Entries that weren't used for a while are deleted, then the oldest ones until the cache
+ * fits in its size limit. The cache is best effort: an entry that can't be read or written
+ * is compiled again, and only an error reading the program file itself fails the load.
+ * The cache is off by default; turn it on with -Dpostfix.cache=[directory], and change the
+ * limits with -Dpostfix.cache.maxBytes=[bytes] and -Dpostfix.cache.maxAgeDays=[days].
+ * @author Quang Vo
+ */
+class ProgramCache {
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;				// 256 MB
+	public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(30);	// 30 days
+
+	private static final ProgramCache GLOBAL = fromProperties();
+	private static final int MAGIC = 0x50464333;		// "PFC3", the start of every entry
+	private static final int HEADER = 16;				// magic, size, number of names, flags
+	private static final int HAS_IMMEDIATES = 1;		// flag: the entry has the constants of INC or the spellings of literals
+	private static final int CHUNK = 1 << 30;			// largest region hashed at once
+	private static final long SETTLE = 2000;			// ms a file must be unchanged before its index is trusted
+	private static final String PROGRAM = ".prog";		// suffix of compiled programs
+	private static final String INDEX = ".path";		// suffix of index files
+
+	private final Path directory;	// where entries are stored
+	private final long maxBytes;	// largest total size of the files in the directory
+	private final long maxAge;		// ms an entry is kept after it was last used
+	private final LongAdder hits = new LongAdder();	// loads that didn't compile
+	private final LongAdder misses = new LongAdder();	// loads that compiled
+
+	/**
+	 * Create a cache in a directory, which is created the first time something is stored.
+	 * @param directory where entries are stored.
+	 * @param maxBytes the largest total size of the cache.
+	 * @param maxAge how long in ms an entry is kept after it was last used.
+	 */
+	public ProgramCache(String directory, long maxBytes, long maxAge) {
+		this.directory = Paths.get(directory);
+		this.maxBytes = maxBytes;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Create the global cache from the system properties.
+	 * @return the cache, or null if -Dpostfix.cache isn't set.
+	 */
+	private static ProgramCache fromProperties() {
+		String directory = System.getProperty("postfix.cache");
+		if(directory == null || directory.isEmpty()){
+			return null;
+		}
+		long maxBytes = Long.getLong("postfix.cache.maxBytes", DEFAULT_MAX_BYTES);
+		long maxAge = TimeUnit.DAYS.toMillis(Long.getLong("postfix.cache.maxAgeDays", TimeUnit.MILLISECONDS.toDays(DEFAULT_MAX_AGE)));
+		return new ProgramCache(directory, maxBytes, maxAge);
+	}
+
+	/**
+	 * Return the cache shared by the whole JVM.
+	 * @return the global cache, or null if it is off.
+	 */
+	public static ProgramCache active() {
+		return GLOBAL;
+	}
+
+	/**
+	 * Compile a program file, through the global cache if it is on.
+	 * @param filename the file to be opened.
+	 * @return the compiled program.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public static CompiledProgram load(String filename) throws IOException {
+		return GLOBAL != null ? GLOBAL.get(filename) : CompiledProgram.compileFile(filename);
+	}
+
+	/**
+	 * Return the compiled form of a program file, from the cache if it has it,
+	 * or compiled and stored in the cache if it doesn't. A file that changes while it is
+	 * compiled is not stored, since the program may not match the hash it was stored under.
+	 * @param filename the file to be opened.
+	 * @return the compiled program.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public CompiledProgram get(String filename) throws IOException {
+		InterpreterStats stats = InterpreterStats.active();
+		long start = stats != null ? System.nanoTime() : 0;
+		Path source = Paths.get(filename).toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		Path index = directory.resolve(hash(source.toString().getBytes(StandardCharsets.UTF_8)) + INDEX);
+
+		String hash = readIndex(index, size, modified);
+		if(hash == null){ //new or changed since it was last seen
+			hash = hashFile(source);
+		}
+		Path entry = directory.resolve(hash + PROGRAM);
+		CompiledProgram program = read(entry);
+		if(program != null){
+			hits.increment();
+			touch(entry);
+			if(stats != null){
+				stats.recordLoad(System.nanoTime() - start);
+			}
+		}
+		else{
+			misses.increment();
+			program = CompiledProgram.compileFile(filename); //records its own load time
+			if(!unchanged(source, size, modified)){
+				return program; //changed since it was hashed, so the program may not be the one with that hash
+			}
+			if(write(entry, program)){
+				evict(System.currentTimeMillis());
+			}
+		}
+
+		//a file changed twice within the resolution of its timestamp would look unchanged, so
+		//the index is only written once the file has settled
+		if(System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(modified) > SETTLE){
+			writeIndex(index, size, modified, hash);
+		}
+		return program;
+	}
+
+	/**
+	 * Delete the entries that weren't used within the age limit, then the least recently
+	 * used ones until the cache fits in its size limit.
+	 * @param now the current time in ms.
+	 */
+	public void evict(long now) {
+		List<Path> files = new ArrayList<>();
+		List<long[]> info = new ArrayList<>(); //last used and size of each file
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for(Path file : stream){
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+					if(attributes.isRegularFile()){
+						info.add(new long[] {attributes.lastModifiedTime().toMillis(), attributes.size(), files.size()});
+						files.add(file);
+					}
+				}
+				catch(IOException e) {
+					//deleted by someone else in the meantime
+				}
+			}
+		}
+		catch(IOException e) {
+			return; //nothing stored yet
+		}
+
+		info.sort((a, b) -> Long.compare(a[0], b[0])); //least recently used first
+		long total = 0;
+		for(long[] file : info){
+			total += file[1];
+		}
+		for(long[] file : info){
+			if(now - file[0] <= maxAge && total <= maxBytes){
+				break;
+			}
+			try {
+				Files.deleteIfExists(files.get((int) file[2]));
+				total -= file[1];
+			}
+			catch(IOException e) {
+				//in use or already gone, try the next one
+			}
+		}
+	}
+
+	/**
+	 * Return the number of loads that didn't compile the program.
+	 * @return the number of hits.
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Return the number of loads that compiled the program.
+	 * @return the number of misses.
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Check that a program file still has the size and modification time it had before.
+	 * @param source the program file.
+	 * @param size the size it had.
+	 * @param modified the modification time it had, in ns.
+	 * @return true if both are the same, false if either changed or the file is gone.
+	 */
+	private static boolean unchanged(Path source, long size, long modified) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+			return attributes.size() == size && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == modified;
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return the hash a program file had when it was last seen, if it hasn't changed since.
+	 * @param index the index file of the program file.
+	 * @param size the size of the program file now.
+	 * @param modified the modification time of the program file now, in ns.
+	 * @return the hash, or null if the file is new or has changed.
+	 */
+	private static String readIndex(Path index, long size, long modified) {
+		try {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(index));
+			if(in.getLong() != size || in.getLong() != modified){
+				return null;
+			}
+			byte[] hash = new byte[in.remaining()];
+			in.get(hash);
+			return new String(hash, StandardCharsets.US_ASCII);
+		}
+		catch(IOException | BufferUnderflowException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Remember the hash of a program file along with its size and modification time.
+	 * @param index the index file of the program file.
+	 * @param size the size of the program file.
+	 * @param modified the modification time of the program file, in ns.
+	 * @param hash the hash of the program file.
+	 */
+	private void writeIndex(Path index, long size, long modified, String hash) {
+		byte[] text = hash.getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer out = ByteBuffer.allocate(16 + text.length);
+		out.putLong(size).putLong(modified).put(text);
+		store(index, out);
+	}
+
+	/**
+	 * Read a compiled program from an entry.
+	 * @param entry the entry file.
+	 * @return the program, or null if there is no such entry or it can't be read.
+	 */
+	private static CompiledProgram read(Path entry) {
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(in.getInt() != MAGIC){
+				return null;
+			}
+			int size = in.getInt();
+			int numNames = in.getInt();
+			boolean hasImmediates = (in.getInt() & HAS_IMMEDIATES) != 0;
+			if(size < 0 || numNames < 0 || HEADER + size * (hasImmediates ? 9L : 5L) > in.limit()){
+				return null;
+			}
+
+			byte[] opcodes = new byte[size];
+			in.get(opcodes);
+			int[] code = new int[size];
+			int[] operands = new int[size];
+			in.asIntBuffer().get(operands);
+			in.position(in.position() + 4 * size);
+			int[] immediates = null;
+			if(hasImmediates){
+				immediates = new int[size];
+				in.asIntBuffer().get(immediates);
+				in.position(in.position() + 4 * size);
+			}
+			String[] names = new String[numNames];
+			for(int i = 0; i < numNames; i++){
+				byte[] name = new byte[in.getInt()];
+				in.get(name);
+				names[i] = new String(name, StandardCharsets.UTF_8);
+			}
+
+			for(int pc = 0; pc < size; pc++){ //a damaged entry must not break the executors
+				int opcode = opcodes[pc];
+				if(opcode < 0 || opcode >= CompiledProgram.NUM_OPCODES || (opcode == CompiledProgram.INC && !hasImmediates)){
+					return null;
+				}
+				if((opcode == CompiledProgram.PUSH_SYM || opcode == CompiledProgram.INC) && (operands[pc] < 0 || operands[pc] >= numNames)){
+					return null;
+				}
+				if(opcode == CompiledProgram.PRINT && (operands[pc] < -1 || operands[pc] >= numNames)){
+					return null;
+				}
+				if(opcode == CompiledProgram.PUSH_INT && hasImmediates && (immediates[pc] < 0 || immediates[pc] > numNames)){
+					return null;
+				}
+				code[pc] = opcode;
+			}
+			return new CompiledProgram(code, operands, immediates, names);
+		}
+		catch(IOException | RuntimeException e) { //missing, truncated or deleted while being read
+			return null;
+		}
+	}
+
+	/**
+	 * Store a compiled program as an entry.
+	 * @param entry the entry file.
+	 * @param program the program.
+	 * @return true if it was stored.
+	 */
+	private boolean write(Path entry, CompiledProgram program) {
+		int size = program.size();
+		boolean hasImmediates = false;
+		for(int pc = 0; pc < size; pc++){
+			hasImmediates |= program.getOpcode(pc) == CompiledProgram.INC || program.getSpelling(pc) != -1;
+		}
+		byte[][] names = new byte[program.numNames()][];
+		long length = HEADER + size * (hasImmediates ? 9L : 5L);
+		for(int i = 0; i < names.length; i++){
+			names[i] = program.getName(i).getBytes(StandardCharsets.UTF_8);
+			length += 4 + names[i].length;
+		}
+		if(length > Integer.MAX_VALUE || length > maxBytes){
+			return false; //would be evicted right away
+		}
+
+		ByteBuffer out = ByteBuffer.allocate((int) length);
+		out.putInt(MAGIC).putInt(size).putInt(names.length).putInt(hasImmediates ? HAS_IMMEDIATES : 0);
+		for(int pc = 0; pc < size; pc++){
+			out.put((byte) program.getOpcode(pc));
+		}
+		for(int pc = 0; pc < size; pc++){
+			out.putInt(program.getOperand(pc));
+		}
+		if(hasImmediates){
+			for(int pc = 0; pc < size; pc++){
+				out.putInt(program.getImmediate(pc));
+			}
+		}
+		for(byte[] name : names){
+			out.putInt(name.length).put(name);
+		}
+		return store(entry, out);
+	}
+
+	/**
+	 * Write a file whole: readers, even in other processes, see either all of it or none of it.
+	 * @param file the file.
+	 * @param content the bytes to write, from the start of the buffer to its position.
+	 * @return true if it was written.
+	 */
+	private boolean store(Path file, ByteBuffer content) {
+		content.flip();
+		Path temp = null;
+		try {
+			Files.createDirectories(directory);
+			temp = Files.createTempFile(directory, "store", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while(content.hasRemaining()){
+					channel.write(content);
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch(IOException e) {
+			try {
+				if(temp != null){
+					Files.deleteIfExists(temp);
+				}
+			}
+			catch(IOException ignored) {
+				//left for evict()
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Mark an entry as just used, so it is evicted last.
+	 * @param entry the entry file.
+	 */
+	private static void touch(Path entry) {
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch(IOException e) {
+			//evicted in the meantime, it is stored again next time
+		}
+	}
+
+	/**
+	 * Hash the content of a program file.
+	 * @param source the program file.
+	 * @return the hash in hex.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	private static String hashFile(Path source) throws IOException {
+		MessageDigest digest = sha256();
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			for(long base = 0; base < fileSize; base += CHUNK){
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(CHUNK, fileSize - base)));
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Hash some bytes.
+	 * @param bytes the bytes.
+	 * @return the hash in hex.
+	 */
+	private static String hash(byte[] bytes) {
+		return HexFormat.of().formatHex(sha256().digest(bytes));
+	}
+
+	/**
+	 * Create a SHA-256 digest, which every JVM has.
+	 * @return the digest.
+	 */
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws IOException {
+		Path dir = Files.createTempDirectory("postfix-cache");
+		Path file = dir.resolve("p1.txt");
+		Files.write(file, "x 5 = x 2 += x print y x = 7".getBytes(StandardCharsets.US_ASCII));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000)); //settled
+		ProgramCache cache = new ProgramCache(dir.resolve("cache").toString(), DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE);
+
+		CompiledProgram p1 = cache.get(file.toString());
+		CompiledProgram p2 = cache.get(file.toString());
+		if(cache.misses() == 1 && cache.hits() == 1 && p1.toString().equals(p2.toString()) && p2.toString().equals("x 5 = x 2 += x print y x = 7")) {
+			System.out.println("Yay 1");
+		}
+
+		CompiledProgram o1 = Optimizer.optimize(p1); //has an INC
+		ProgramCache other = new ProgramCache(dir.resolve("other").toString(), DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE);
+		other.write(other.directory.resolve("o" + PROGRAM), o1);
+		CompiledProgram o2 = read(other.directory.resolve("o" + PROGRAM));
+		if(o2 != null && o2.toString().equals(o1.toString())) {
+			System.out.println("Yay 2");
+		}
+
+		Path copy = dir.resolve("copy.txt");
+		Files.copy(file, copy);
+		cache.get(copy.toString()); //same content, different file
+		Files.write(file, "x 6 = x print".getBytes(StandardCharsets.US_ASCII));
+		CompiledProgram p3 = cache.get(file.toString());
+		if(cache.misses() == 2 && cache.hits() == 2 && p3.toString().equals("x 6 = x print")) {
+			System.out.println("Yay 3");
+		}
+
+		Files.write(cache.directory.resolve(hashFile(file) + PROGRAM), new byte[] {0x50, 0x46, 0x43, 0x32, 0, 0, 0, 9}); //truncated
+		if(cache.get(file.toString()).toString().equals("x 6 = x print") && cache.misses() == 3) {
+			System.out.println("Yay 4");
+		}
+
+		ProgramCache small = new ProgramCache(cache.directory.toString(), 0, DEFAULT_MAX_AGE);
+		small.evict(System.currentTimeMillis());
+		ProgramCache old = new ProgramCache(other.directory.toString(), DEFAULT_MAX_BYTES, 0);
+		old.evict(System.currentTimeMillis() + 1000);
+		try (DirectoryStream<Path> left = Files.newDirectoryStream(cache.directory); DirectoryStream<Path> leftOther = Files.newDirectoryStream(other.directory)) {
+			if(!left.iterator().hasNext() && !leftOther.iterator().hasNext()) {
+				System.out.println("Yay 5");
+			}
+		}
+
+		long size = Files.size(file);
+		long modified = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+		boolean before = unchanged(file, size, modified);
+		Files.write(file, "x 7 = x print 1 print".getBytes(StandardCharsets.US_ASCII)); //as if while it was compiled
+		if(before && !unchanged(file, size, modified) && !unchanged(dir.resolve("gone.txt"), size, modified)) {
+			System.out.println("Yay 6");
+		}
+
+		for(Path p : new Path[] {cache.directory, other.directory, copy, file, dir}){
+			Files.deleteIfExists(p);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts a program file in the text format into the binary form of BinaryProgram,
+ * which Computer.runBinary() loads without tokenizing it.
+ * Run with: java ProgramConverter [text file] [binary file]
+ * @author Quang Vo
+ */
+class ProgramConverter {
+
+	/**
+	 * The converter entry point.
+	 * @param args the text file and the binary file.
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.out.println("Usage: java ProgramConverter [text file] [binary file]");
+			System.exit(0);
+		}
+
+		try {
+			int symbols = BinaryProgram.convert(args[0], args[1]);
+			long before = new File(args[0]).length();
+			long after = new File(args[1]).length();
+			System.out.println("Wrote " + symbols + " symbols to " + args[1] + " (" + after + " bytes, " + before + " as text)");
+		}
+		catch(IOException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,515 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a compiled program on a computer.
+ * It has the same semantics as Computer.process(), but dispatches on
+ * the opcodes of a CompiledProgram instead of comparing strings, and
+ * keeps its operands on a ValueStack instead of the progStack.
+ * Every identifier was given a dense slot when the program was compiled,
+ * so variables are read and written as plain array accesses. The symbols
+ * of the computer are only updated by publish(), which is called when the
+ * program finishes or fails. Names that are shared through the globals of the computer
+ * are read and written in the shared table instead.
+ * When InterpreterStats is enabled as the executor is created, it counts what it
+ * executes in its own fields and adds them to the statistics now and then.
+ * @author Quang Vo
+ */
+class ProgramExecutor {
+
+	private final CompiledProgram program;	// the program to run
+	private final Computer computer;		// the computer whose state is updated
+	private final ValueStack stack;		// the operands waiting for an operator
+	private OutputSink out;				// where print statements go
+	private int pc;							// position of the next symbol
+
+	private String[] names;		// the name of each slot
+	private int[] slots;		// the value of each variable
+	private boolean[] defined;	// whether each variable has a value
+	private AtomicLong[] shared;	// the shared cell of each global variable, null for local ones
+	private int numSlots;		// number of slots in use
+	private IntSymbolTable extraSlots;	// slots of names that aren't in the program, made at run time
+	private PersistentSymbolTable<Integer> history;	// the local variables, kept up to date only after keepSnapshots()
+	private TraceWriter trace;	// where each step is recorded, null if not tracing
+
+	private static final int FLUSH_INTERVAL = 1 << 16;	// symbols counted before they are added to the statistics
+
+	private final InterpreterStats stats;	// where counts go, null if statistics are off
+	private long[] opcodeCounts;	// executions of each opcode since the last flush
+	private long hits;				// names found in the symbols since the last flush
+	private long misses;			// names not found in the symbols since the last flush
+	private int unflushed;			// symbols processed since the last flush
+	private long executeNanos;		// time spent in process()
+
+	/**
+	 * Create an executor that runs the program from its first symbol.
+	 * Variables that already have a value in the symbols of the computer start with that value,
+	 * and print statements go to the output sink of the computer.
+	 * @param program the compiled program.
+	 * @param computer the computer whose symbols are updated.
+	 */
+	public ProgramExecutor(CompiledProgram program, Computer computer) {
+		this.program = program;
+		this.computer = computer;
+		this.stack = new ValueStack();
+		this.out = computer.getOutput();
+		this.pc = 0;
+		this.stats = InterpreterStats.active();
+		if(stats != null){
+			opcodeCounts = new long[CompiledProgram.NUM_OPCODES];
+		}
+
+		numSlots = program.numNames();
+		names = new String[Math.max(numSlots, 4)];
+		slots = new int[names.length];
+		defined = new boolean[names.length];
+		shared = new AtomicLong[names.length];
+		for(int i = 0; i < numSlots; i++){
+			names[i] = program.getName(i);
+			load(i);
+		}
+	}
+
+	/**
+	 * Create a copy of another executor, at the same position and with the same variables.
+	 * @param other the executor to copy.
+	 * @param computer the computer whose symbols the copy updates.
+	 */
+	private ProgramExecutor(ProgramExecutor other, Computer computer) {
+		this.program = other.program;
+		this.computer = computer;
+		this.stack = other.stack.copy();
+		this.out = other.out;
+		this.pc = other.pc;
+		this.stats = other.stats;
+		if(stats != null){
+			opcodeCounts = new long[CompiledProgram.NUM_OPCODES];
+		}
+
+		numSlots = other.numSlots;
+		names = other.names.clone();
+		slots = other.slots.clone();
+		defined = other.defined.clone();
+		shared = other.shared.clone();
+		history = other.history; //immutable, so it can be shared
+		if(other.extraSlots != null){
+			extraSlots = new IntSymbolTable(4);
+			for(int i = program.numNames(); i < numSlots; i++){
+				extraSlots.put(names[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Give a slot its starting value, or link it to the shared cell if the name is global.
+	 * This is the only time the name is looked up, so it is what counts as a hit or a miss.
+	 * @param slot the slot.
+	 */
+	private void load(int slot) {
+		ConcurrentSymbolTable globals = computer.getGlobals();
+		if(globals != null){
+			shared[slot] = globals.cell(names[slot]);
+		}
+		if(shared[slot] == null && computer.symbols.containsKey(names[slot])){
+			slots[slot] = computer.symbols.get(names[slot]);
+			defined[slot] = true;
+		}
+		if(stats != null && (ConcurrentSymbolTable.isDefined(shared[slot]) || defined[slot])){
+			hits++;
+		}
+		else if(stats != null){
+			misses++;
+		}
+	}
+
+	/**
+	 * Process the specified number of symbols from the program.
+	 * Update the stack and the variables of this executor appropriately.
+	 * The variables are published when the program finishes, and also when a symbol
+	 * fails, so the computer is left as Computer.process() would leave it.
+	 * @param numSymbols the number of specified symbols to be processed.
+	 * @return the number of symbols remaining.
+	 * @throws NullPointerException if the stack runs out or an identifier has no value.
+	 */
+	public int process(int numSymbols) {
+		int end = Math.min(program.size(), pc + numSymbols);
+		long start = stats != null ? System.nanoTime() : 0;
+		int first = pc;
+
+		try {
+			for(; pc < end; pc++){
+				int opcode = program.getOpcode(pc);
+				if(opcodeCounts != null){
+					opcodeCounts[opcode]++;
+				}
+				if(trace != null){
+					traceStep(opcode);
+				}
+
+				if(opcode == CompiledProgram.PUSH_INT){
+					stack.push(program.getOperand(pc)); //push the literal onto the stack
+				}
+				else if(opcode == CompiledProgram.PUSH_SYM){
+					stack.pushSymbol(program.getOperand(pc)); //the slot of an identifier is its index in the name table
+				}
+				else if(opcode == CompiledProgram.ASSIGN){
+					int value = popValue(); //get the value
+					int key = stack.peekSymbol() != -1 ? stack.popSymbol() : slotOf(Integer.toString(stack.pop())); //get the key
+					assign(key, value);
+				}
+				else if(opcode == CompiledProgram.INC){
+					increment(program.getOperand(pc), program.getImmediate(pc));
+				}
+				else if(opcode == CompiledProgram.PRINT){
+					int value = popValue();
+					int spelling = program.getOperand(pc);
+					if(spelling == -1){
+						out.println(value); //print the value of the top of the stack
+					}
+					else{
+						out.println(names[spelling]); //a literal, as it was written
+					}
+					if(trace != null){
+						trace.print(spelling == -1 ? Integer.toString(value) : names[spelling]);
+					}
+				}
+				else{
+					int right = stack.peekSymbol();
+					int item1 = popValue(); //first operand
+					int left = stack.peekSymbol();
+					int item2 = popValue(); //second operand
+					int key = left != -1 ? left : right; //the last identifier popped is the one that gets assigned
+
+					if(key != -1 && shared[key] != null && opcode >= CompiledProgram.ADD_ASSIGN && opcode <= CompiledProgram.DIV_ASSIGN){
+						//a shared variable is updated atomically, with its current value
+						int value = ConcurrentSymbolTable.update(shared[key], names[key], opcode, key == left ? item1 : item2, key == left);
+						if(trace != null){
+							trace.assign(names[key], value);
+						}
+						continue;
+					}
+
+					switch(opcode){
+						case CompiledProgram.ADD:
+							stack.push(item2 + item1);
+							break;
+						case CompiledProgram.SUB:
+							stack.push(item2 - item1);
+							break;
+						case CompiledProgram.MUL:
+							stack.push(item2 * item1);
+							break;
+						case CompiledProgram.DIV:
+							stack.push(item2 / item1);
+							break;
+						case CompiledProgram.ADD_ASSIGN:
+							assign(key, item2 + item1); //keep the key, update the value
+							break;
+						case CompiledProgram.SUB_ASSIGN:
+							assign(key, item2 - item1);
+							break;
+						case CompiledProgram.MUL_ASSIGN:
+							assign(key, item2 * item1);
+							break;
+						case CompiledProgram.DIV_ASSIGN:
+							assign(key, item2 / item1);
+							break;
+					}
+				}
+				if(trace != null && opcode <= CompiledProgram.DIV){
+					trace.push(opcode == CompiledProgram.PUSH_INT ? literal(pc) : stack.peekSymbol() != -1 ? names[stack.peekSymbol()] : Integer.toString(stack.peek())); //what the step pushed
+				}
+			}
+		}
+		catch(RuntimeException e) {
+			publish(); //what it did before it failed goes back to the computer, as with Computer.process()
+			out.flush(); //and so do the lines it printed
+			if(stats != null){
+				flush(); //the program stops here, so don't lose the counts
+			}
+			throw e;
+		}
+
+		if(pc == program.size()){
+			publish(); //the final state goes back to the computer
+			out.flush();
+		}
+		if(stats != null){
+			count(start, pc - first);
+		}
+		return remaining();
+	}
+
+	/**
+	 * Account for a call to process(), and add the counts to the statistics
+	 * every FLUSH_INTERVAL symbols and when the program finishes.
+	 * @param start the time the call started.
+	 * @param processed the number of symbols the call processed.
+	 */
+	private void count(long start, int processed) {
+		if(processed == 0){
+			return; //already finished, or asked for nothing
+		}
+		executeNanos += System.nanoTime() - start;
+		unflushed += processed;
+		if(pc == program.size()){
+			flush();
+			stats.recordExecute(executeNanos);
+		}
+		else if(unflushed >= FLUSH_INTERVAL){
+			flush();
+		}
+	}
+
+	/**
+	 * Add the counts since the last flush to the statistics.
+	 */
+	private void flush() {
+		stats.add(opcodeCounts, hits, misses, stack.highWaterMark());
+		Arrays.fill(opcodeCounts, 0);
+		hits = 0;
+		misses = 0;
+		unflushed = 0;
+	}
+
+	/**
+	 * Start the trace line of the symbol at pc, with the number of items it pops.
+	 * @param opcode the opcode of the symbol.
+	 */
+	private void traceStep(int opcode) {
+		String symbol;
+		if(opcode == CompiledProgram.PUSH_INT){
+			symbol = literal(pc);
+		}
+		else if(opcode == CompiledProgram.PUSH_SYM){
+			symbol = program.getName(program.getOperand(pc));
+		}
+		else{
+			symbol = CompiledProgram.symbolOf(opcode);
+		}
+		trace.step(pc + 1, symbol); //steps are counted from 1, like the debug mode of runProgram
+		if(opcode == CompiledProgram.PRINT){
+			trace.pop(1);
+		}
+		else if(opcode >= CompiledProgram.ADD && opcode != CompiledProgram.INC){
+			trace.pop(2);
+		}
+	}
+
+	/**
+	 * Return the literal pushed at pc as it was written.
+	 * @param pc the position of the PUSH_INT.
+	 * @return the spelling of the literal, or its value if it was written as Integer.toString().
+	 */
+	private String literal(int pc) {
+		int spelling = program.getSpelling(pc);
+		return spelling == -1 ? Integer.toString(program.getOperand(pc)) : names[spelling];
+	}
+
+	/**
+	 * Remove the top of the stack and return its value.
+	 * Identifiers are read from their slot.
+	 * @return the integer value.
+	 * @throws NullPointerException if the identifier has no value.
+	 */
+	private int popValue() {
+		if(stack.peekSymbol() == -1){
+			return stack.pop();
+		}
+		return read(stack.popSymbol());
+	}
+
+	/**
+	 * Return the value of a variable.
+	 * @param slot the slot of the variable.
+	 * @return the integer value.
+	 * @throws NullPointerException if the variable has no value.
+	 */
+	private int read(int slot) {
+		if(shared[slot] != null){
+			return ConcurrentSymbolTable.get(shared[slot], names[slot]); //fails if the key was removed
+		}
+		if(!defined[slot]){
+			throw new NullPointerException("Undefined symbol " + names[slot]);
+		}
+		return slots[slot];
+	}
+
+	/**
+	 * Add a constant to a variable, like "x c +=" does.
+	 * @param slot the slot of the variable.
+	 * @param constant the constant.
+	 * @throws NullPointerException if the variable has no value.
+	 */
+	private void increment(int slot, int constant) {
+		if(shared[slot] != null){
+			int value = ConcurrentSymbolTable.update(shared[slot], names[slot], CompiledProgram.ADD_ASSIGN, constant, true); //atomic, like a compound assignment of a shared variable
+			if(trace != null){
+				trace.assign(names[slot], value);
+			}
+		}
+		else{
+			assign(slot, read(slot) + constant);
+		}
+	}
+
+	/**
+	 * Store the result of an assignment.
+	 * @param key the slot of the variable, -1 if both operands of a compound assignment were integers.
+	 * @param value the new value.
+	 */
+	private void assign(int key, int value) {
+		if(key == -1){
+			key = slotOf(""); //Computer.process() stores it under the empty key
+		}
+		if(shared[key] != null){
+			shared[key].set(value);
+		}
+		else{
+			slots[key] = value;
+			defined[key] = true;
+			if(history != null){
+				history = history.put(names[key], value);
+			}
+		}
+		if(trace != null){
+			trace.assign(names[key], value);
+		}
+	}
+
+	/**
+	 * Return the slot of a name that was not in the program, making one if needed.
+	 * This is only needed when an integer is used as the key of an assignment.
+	 * @param name the name.
+	 * @return the slot.
+	 */
+	private int slotOf(String name) {
+		if(extraSlots == null){
+			extraSlots = new IntSymbolTable(4);
+		}
+		if(extraSlots.containsKey(name)){
+			return extraSlots.get(name);
+		}
+
+		if(numSlots == names.length){
+			names = Arrays.copyOf(names, numSlots * 2);
+			slots = Arrays.copyOf(slots, numSlots * 2);
+			defined = Arrays.copyOf(defined, numSlots * 2);
+			shared = Arrays.copyOf(shared, numSlots * 2);
+		}
+		names[numSlots] = name;
+		extraSlots.put(name, numSlots);
+		load(numSlots);
+		return numSlots++;
+	}
+
+	/**
+	 * Copy the value of every local variable into the symbols of the computer.
+	 * This is done when the program finishes or fails, and can be called in between
+	 * to see the current state, for example in a debug view.
+	 */
+	public void publish() {
+		IntSymbolTable symbols = computer.symbols;
+		for(int i = 0; i < numSlots; i++){
+			if(defined[i] && shared[i] == null){
+				symbols.put(names[i], slots[i]);
+			}
+		}
+	}
+
+	/**
+	 * Start keeping the local variables in a persistent symbol table as they change,
+	 * so snapshot() is O(1) from then on.
+	 * Every assignment then costs a few small allocations.
+	 */
+	public void keepSnapshots() {
+		if(history == null){
+			history = snapshot();
+		}
+	}
+
+	/**
+	 * Return the current value of every local variable as an immutable table.
+	 * The table can be kept for as long as needed; it is not changed by later steps.
+	 * This is O(1) after keepSnapshots(), and O(number of variables) before.
+	 * @return the snapshot.
+	 */
+	public PersistentSymbolTable<Integer> snapshot() {
+		if(history != null){
+			return history;
+		}
+		PersistentSymbolTable<Integer> snapshot = PersistentSymbolTable.empty();
+		for(int i = 0; i < numSlots; i++){
+			if(defined[i] && shared[i] == null){
+				snapshot = snapshot.put(names[i], slots[i]);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Create an independent copy of this executor, at the same position and with
+	 * the same stack and variables, to try out a different continuation.
+	 * @param computer the computer whose symbols the copy updates.
+	 * @return the copy.
+	 */
+	public ProgramExecutor fork(Computer computer) {
+		return new ProgramExecutor(this, computer);
+	}
+
+	/**
+	 * Return the number of symbols that have not been processed yet.
+	 * @return the number of symbols remaining.
+	 */
+	public int remaining() {
+		return program.size() - pc;
+	}
+
+	/**
+	 * Return the compiled program.
+	 * @return the program being run.
+	 */
+	public CompiledProgram getProgram() {
+		return program;
+	}
+
+	/**
+	 * Record every step from now on in a trace.
+	 * @param trace the trace, or null to stop tracing.
+	 */
+	public void setTrace(TraceWriter trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Send the output of print statements somewhere other than the output of the computer.
+	 * @param out the sink to print to.
+	 */
+	public void setOutput(OutputSink out) {
+		this.out = out;
+	}
+
+	/**
+	 * Return the stack of this executor.
+	 * @return the stack.
+	 */
+	public ValueStack getStack() {
+		return stack;
+	}
+
+	/**
+	 * Create a string representation of the stack, with identifiers shown by name.
+	 * @return the string representation of the stack.
+	 */
+	public String stackToString() {
+		return stack.toString(names);
+	}
+
+	/**
+	 * Create a string representation of the remaining program.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		return program.toString(pc);
+	}
+}
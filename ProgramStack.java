@@ -1,22 +1,26 @@
 import java.util.Iterator;
 
 /**
- * Linked list implementation of the stack.
+ * Array implementation of the stack.
+ * The items fill the end of the array: the top is at index first and the bottom
+ * is the last element, so the stack grows toward index 0. Iterating from the top
+ * walks the array forward, and toArray() is a single System.arraycopy().
  * @author Quang Vo
  * @param <T> the type of the value in the ProgramStack.
  */
 class ProgramStack<T> implements Iterable<T> {
-	// You'll want some instance variables here
-	private Node<T> top;
-	private int size;	
+	private static final int INITIAL_CAPACITY = 16; //capacity of a new or cleared stack
+	
+	private Object[] items; //the items, from the top at index first to the bottom at the end
+	private int first; //index of the top of the stack, items.length when empty
 	
 	/**
 	 * Construct an empty stack.
 	 */
 	public ProgramStack() {
 		//setup what you need	
-		top = null;
-		size = 0;
+		items = new Object[INITIAL_CAPACITY];
+		first = items.length;
 	}
 	
 	/**
@@ -26,18 +30,22 @@ class ProgramStack<T> implements Iterable<T> {
 	public void push(T item) {
 		//push an item onto the stack
 		//you may assume the item is not null
-		//O(1)
-		
-		Node<T> newNode = new Node<T>(item); //create a new node with the item
+		//amortized O(1)
 		
-		//link the nodes
-		newNode.setNext(top);
-		if(size() != 0){
-			top.setPrev(newNode);
+		if(first == 0){ //no room before the top
+			grow();
 		}
-		
-		top = newNode; //set the newNode to be the top
-		size++;
+		items[--first] = item; //the new item is the top
+	}
+	
+	/**
+	 * Double the capacity of the stack, moving the items to the end of the new array.
+	 */
+	private void grow() {
+		Object[] bigger = new Object[items.length * 2];
+		System.arraycopy(items, 0, bigger, items.length, items.length);
+		first = items.length;
+		items = bigger;
 	}
 	
 	/**
@@ -45,23 +53,18 @@ class ProgramStack<T> implements Iterable<T> {
 	 * @return the removed item.
 	 * @return null if the stack is empty.
 	 */
+	@SuppressWarnings("unchecked")
 	public T pop() {
 		//pop an item off the stack
 		//if there are no items on the stack, return null
 		//O(1)
 		
-		//replace this dummy return statement
-		
 		if(isEmpty()){ //check if the stack is empty
 			return null;
 		}
 		else{
-			T toReturn = top.getValue(); 
-			top = top.getNext(); //set top to be the next item
-			size--;
-			if(size != 0){
-				top.setPrev(null);
-			}
+			T toReturn = (T) items[first];
+			items[first++] = null; //let the item be garbage collected, the next item is the top
 			return toReturn; //return the old value
 		}
 		
@@ -73,18 +76,17 @@ class ProgramStack<T> implements Iterable<T> {
 	 * @return the most recently inserted item in the stack.
 	 * @return null if the stack is empty.
 	 */
+	@SuppressWarnings("unchecked")
 	public T peek() {
 		//return the top of the stack (but don't remove it)
 		//if there are no items on the stack, return null
 		//O(1)
 		
-		//replace this dummy return statement
-		
 		if(isEmpty()){ //check if the stack is empty
 			return null;
 		}
 		else{
-			return top.getValue();
+			return (T) items[first];
 		}
 	}
 
@@ -99,19 +101,14 @@ class ProgramStack<T> implements Iterable<T> {
 		//should be shown to the right and the bottom of
 		//the stack on the left.
 		
-		//Hint: Reuse the provided code from another class
-		//instead of writing this yourself!
-		
 		//O(n)
 		
-		//replace this dummy return statement
-		
-		if(size != 0){
-			return Node.listToStringBackward(top); //reuse the code from Node.java
-		}
-		else{
-			return Node.listToString(top);
+		StringBuilder ret = new StringBuilder();
+		for(int i = items.length - 1; i >= first; i--){ //from the bottom to the top
+			ret.append(items[i]); //add values to the string
+			ret.append(" "); //add space " "
 		}
+		return ret.toString().trim(); //the same as Node.listToStringBackward
 	}
 	
 	/**
@@ -121,8 +118,8 @@ class ProgramStack<T> implements Iterable<T> {
 		//remove everything from the stack
 		//O(1)
 		
-		top = null;
-		size = 0;
+		items = new Object[INITIAL_CAPACITY]; //the old items are garbage collected with the old array
+		first = items.length;
 	}
 	
 	/**
@@ -133,9 +130,7 @@ class ProgramStack<T> implements Iterable<T> {
 		//return the number of items on the stack
 		//O(1)
 		
-		//replace this dummy return statement
-		
-		return size;
+		return items.length - first;
 	}
 	
 	/**
@@ -146,14 +141,7 @@ class ProgramStack<T> implements Iterable<T> {
 		//return whether or not the stack is empty
 		//O(1)
 		
-		//replace this dummy return statement
-		
-		if(size() == 0){ //if the stack is empty
-			return true;
-		}
-		else{
-			return false;
-		}
+		return first == items.length;
 	}
 	
 	/**
@@ -161,7 +149,6 @@ class ProgramStack<T> implements Iterable<T> {
 	 * The top of the stack is the element 0.
 	 * @return the array representation.
 	 */
-	@SuppressWarnings("unchecked")
 	public Object[] toArray() {
 		//Return an array representation of the stack.
 		//The top of the stack should be element 0
@@ -169,17 +156,8 @@ class ProgramStack<T> implements Iterable<T> {
 		
 		//O(n)
 		
-		//replace this dummy return statement
-		
-		T[] stackArray = (T[]) new Object[size]; //create an array of objects
-		
-		Node<T> current = top; 
-		
-		for(int i = 0; i < size(); i++){
-			stackArray[i] = current.getValue(); //add values to the array
-			current = current.getNext(); //move to the next node 
-		}
-		
+		Object[] stackArray = new Object[size()]; //create an array of objects
+		System.arraycopy(items, first, stackArray, 0, stackArray.length); //the items are already top first
 		return stackArray;
 	}
 	
@@ -201,21 +179,18 @@ class ProgramStack<T> implements Iterable<T> {
 		//if you try to use next when there are no
 		//more items
 		
-		//replace this dummy return statement
-		
-	//	return new Iterator<T>(){
 	/**
 	 * This is the implementation of the StackIterator.
 	 */
 	private class StackIterator implements Iterator<T>{
-			Node<T> current = top;
+			int current = first; //index of the next item
 			
 			/**
 			 * Test if there are more items in the stack.
 			 * @return true if there are more items in the stack.
 			 */
 			public boolean hasNext(){
-				return current!=null;
+				return current < items.length;
 			}
 			
 			/**
@@ -223,13 +198,12 @@ class ProgramStack<T> implements Iterable<T> {
 			 * @return the next item in the stack.
 			 * @throws NullPointerException if there are no more items.
 			 */
+			@SuppressWarnings("unchecked")
 			public T next(){
 				if(!hasNext()){ //check if there are more items in the stack
 					throw new NullPointerException("No more items");
 				}
-				T toReturn = current.getValue();
-				current = current.getNext(); //move to the next node
-				return toReturn; //return the item
+				return (T) items[current++]; //return the item, move to the next one
 			}
 		}
 		
@@ -310,6 +284,31 @@ class ProgramStack<T> implements Iterable<T> {
 			System.out.println("Yay 10");
 		}
 		
+		ProgramStack<Integer> s4 = new ProgramStack<>();
+		for(int n = 0; n < 1000; n++){ //more than the initial capacity
+			s4.push(n);
+		}
+		Object[] array = s4.toArray();
+		
+		if(s4.size() == 1000 && s4.peek().equals(999) && array.length == 1000 && array[0].equals(999) && array[999].equals(0) && s4.pop().equals(999) && s4.size() == 999) {
+			System.out.println("Yay 11");
+		}
+		
+		Iterator<Integer> it = s4.iterator();
+		int count = 0;
+		while(it.hasNext()){
+			if(it.next() != 998 - count) break;
+			count++;
+		}
+		try {
+			it.next();
+		}
+		catch(NullPointerException e) {
+			if(count == 999) {
+				System.out.println("Yay 12");
+			}
+		}
+		
 		
 	}
 }
\ No newline at end of file
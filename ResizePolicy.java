@@ -0,0 +1,105 @@
+/**
+ * Decides when a SymbolTable should grow, shrink or be rehashed in place.
+ * The table asks its policy after every insert of a new key and every removal,
+ * passing only counters it already keeps, so asking costs no scan of the table.
+ * @author Quang Vo
+ */
+interface ResizePolicy {
+
+	/**
+	 * The original policy: double the capacity when the table is at least 80% full,
+	 * never shrink, and leave tombstones until the next resize.
+	 */
+	ResizePolicy FIXED = new ResizePolicy() {
+		public int afterPut(int size, int tombstones, int capacity, int probeLength) {
+			return size >= ((double) capacity) * 4/5 ? capacity * 2 : 0;
+		}
+
+		public int afterRemove(int size, int tombstones, int capacity) {
+			return 0;
+		}
+	};
+
+	/**
+	 * Return the capacity the table should have after a new key was inserted.
+	 * @param size the number of keys now in the table.
+	 * @param tombstones the number of tombstones now in the table.
+	 * @param capacity the current capacity.
+	 * @param probeLength the number of indices the insert stepped past, tombstones included.
+	 * @return the new capacity, the current capacity to rehash in place, or 0 to leave the table as it is.
+	 */
+	int afterPut(int size, int tombstones, int capacity, int probeLength);
+
+	/**
+	 * Return the capacity the table should have after a key was removed.
+	 * @param size the number of keys now in the table.
+	 * @param tombstones the number of tombstones now in the table.
+	 * @param capacity the current capacity.
+	 * @return the new capacity, the current capacity to rehash in place, or 0 to leave the table as it is.
+	 */
+	int afterRemove(int size, int tombstones, int capacity);
+
+	/**
+	 * Return an adaptive policy with the default settings: grow at 80% load or when an
+	 * insert probes more than 8 indices in a table at least half full, shrink below 20%
+	 * load down to 8 indices, and rehash in place when a quarter of the indices are tombstones.
+	 * @return the policy.
+	 */
+	static ResizePolicy adaptive() {
+		return new Adaptive(0.8, 0.5, 8, 0.2, 8, 0.25);
+	}
+
+	/**
+	 * Grows, shrinks and cleans up a table based on its load, probe lengths and tombstones.
+	 */
+	class Adaptive implements ResizePolicy {
+		private final double maxLoad;		// load at which the table always grows
+		private final double probeLoad;	// load above which a long probe makes the table grow
+		private final int maxProbe;			// probe length that counts as long
+		private final double minLoad;		// load below which the table shrinks
+		private final int minCapacity;		// the table never shrinks below this
+		private final double maxTombstones;	// fraction of tombstones that triggers a rehash in place
+
+		/**
+		 * Create an adaptive policy.
+		 * @param maxLoad load at which the table always doubles.
+		 * @param probeLoad load above which a probe longer than maxProbe makes the table double.
+		 * @param maxProbe probe length that counts as long.
+		 * @param minLoad load below which the table halves; under half of maxLoad, so halving never makes it grow again.
+		 * @param minCapacity the table never shrinks below this capacity.
+		 * @param maxTombstones fraction of indices holding tombstones that triggers a rehash in place.
+		 */
+		public Adaptive(double maxLoad, double probeLoad, int maxProbe, double minLoad, int minCapacity, double maxTombstones) {
+			if(maxLoad <= 0 || maxLoad >= 1 || minLoad * 2 >= maxLoad){
+				throw new IllegalArgumentException("Need 0 < 2 * minLoad < maxLoad < 1");
+			}
+			this.maxLoad = maxLoad;
+			this.probeLoad = probeLoad;
+			this.maxProbe = maxProbe;
+			this.minLoad = minLoad;
+			this.minCapacity = minCapacity;
+			this.maxTombstones = maxTombstones;
+		}
+
+		public int afterPut(int size, int tombstones, int capacity, int probeLength) {
+			double load = (double) size / capacity;
+			if(load >= maxLoad || (probeLength > maxProbe && load >= probeLoad)){
+				return capacity * 2;
+			}
+			if((probeLength > maxProbe && tombstones > 0) || tombstones >= maxTombstones * capacity){
+				return capacity; //the chain is long because of tombstones, not load
+			}
+			return 0;
+		}
+
+		public int afterRemove(int size, int tombstones, int capacity) {
+			if(capacity / 2 >= minCapacity && size < minLoad * capacity){
+				return capacity / 2;
+			}
+			if(tombstones >= maxTombstones * capacity){
+				return capacity;
+			}
+			return 0;
+		}
+	}
+}
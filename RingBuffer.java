@@ -0,0 +1,234 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue for handing items from one producer thread to one consumer thread.
+ * The items are kept in a circular array. The producer only writes the tail and the
+ * consumer only writes the head, so neither side takes a lock: an item is published by
+ * a release store of the tail, and its slot is given back by a release store of the head.
+ * Each side also remembers the last index it read of the other side, so it only reads
+ * the shared counter again when the queue looks full or empty.
+ * A side that has to wait spins briefly, then yields, then parks for short periods.
+ * @author Quang Vo
+ */
+class RingBuffer<T> {
+	private static final int SPINS = 100;			// busy waits before yielding
+	private static final int YIELDS = 200;			// busy waits before parking
+	private static final long PARK_NANOS = 50_000;	// how long to park at a time
+
+	private final Object[] slots;	// the items, at their index modulo the capacity
+	private final int mask;		// capacity - 1
+	private final AtomicLong head = new AtomicLong();	// number of items taken, written by the consumer
+	private final AtomicLong tail = new AtomicLong();	// number of items put, written by the producer
+	private long headSeen;		// the head as last read by the producer
+	private long tailSeen;		// the tail as last read by the consumer
+	private volatile boolean closed = false;		// the producer has put its last item
+	private volatile boolean cancelled = false;	// the consumer doesn't want any more items
+
+	/**
+	 * Create an empty ring buffer.
+	 * @param capacity the number of items it can hold, rounded up to a power of two.
+	 * @throws IllegalArgumentException if the capacity is less than 1 or too large.
+	 */
+	public RingBuffer(int capacity) {
+		if(capacity < 1 || capacity > 1 << 30){
+			throw new IllegalArgumentException("Capacity " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity){
+			size <<= 1;
+		}
+		this.slots = new Object[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Return the number of items it can hold.
+	 * @return the capacity.
+	 */
+	public int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Return the number of items waiting, which may already be out of date.
+	 * @return the number of items.
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * Add an item if there is room. Only called by the producer.
+	 * @param item the item.
+	 * @return true if it was added, false if the ring buffer is full.
+	 * @throws NullPointerException if the item is null.
+	 */
+	public boolean offer(T item) {
+		if(item == null){
+			throw new NullPointerException("Null item");
+		}
+		long t = tail.getPlain(); //only this thread writes it
+		if(t - headSeen == slots.length){
+			headSeen = head.getAcquire();
+			if(t - headSeen == slots.length){
+				return false;
+			}
+		}
+		slots[(int) t & mask] = item;
+		tail.setRelease(t + 1); //publish the item
+		return true;
+	}
+
+	/**
+	 * Remove the oldest item if there is one. Only called by the consumer.
+	 * @return the item, or null if the ring buffer is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long h = head.getPlain(); //only this thread writes it
+		if(h == tailSeen){
+			tailSeen = tail.getAcquire();
+			if(h == tailSeen){
+				return null;
+			}
+		}
+		int index = (int) h & mask;
+		T item = (T) slots[index];
+		slots[index] = null; //so it can be garbage collected
+		head.setRelease(h + 1); //give the slot back
+		return item;
+	}
+
+	/**
+	 * Add an item, waiting for room if the ring buffer is full. Only called by the producer.
+	 * @param item the item.
+	 * @return true if it was added, false if the consumer cancelled.
+	 * @throws NullPointerException if the item is null.
+	 */
+	public boolean put(T item) {
+		for(int idle = 0; !offer(item); idle++){
+			if(cancelled){
+				return false;
+			}
+			backOff(idle);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the oldest item, waiting for one if the ring buffer is empty. Only called by the consumer.
+	 * @return the item, or null if the producer closed the ring buffer and every item was taken.
+	 */
+	public T take() {
+		for(int idle = 0; ; idle++){
+			T item = poll();
+			if(item != null){
+				return item;
+			}
+			if(closed){
+				return poll(); //an item put just before closing
+			}
+			backOff(idle);
+		}
+	}
+
+	/**
+	 * Tell the consumer there will be no more items. Only called by the producer.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Tell the producer to stop, and let a put() that is waiting return. Only called by the consumer.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Return whether the consumer cancelled.
+	 * @return true if no more items are wanted.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Wait a little before trying again, longer the longer it has been waiting.
+	 * @param idle the number of times it already waited.
+	 */
+	private static void backOff(int idle) {
+		if(idle < SPINS){
+			Thread.onSpinWait();
+		}
+		else if(idle < SPINS + YIELDS){
+			Thread.yield(); //the other side may need this core
+		}
+		else{
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		RingBuffer<String> r1 = new RingBuffer<>(3);
+		boolean added = r1.offer("a") && r1.offer("b") && r1.offer("c") && r1.offer("d");
+
+		if(r1.capacity() == 4 && added && !r1.offer("e") && r1.size() == 4 && r1.poll().equals("a")) {
+			System.out.println("Yay 1");
+		}
+
+		r1.offer("e"); //wraps around
+		StringBuilder order = new StringBuilder();
+		for(String s = r1.poll(); s != null; s = r1.poll()){
+			order.append(s);
+		}
+		if(order.toString().equals("bcde") && r1.size() == 0) {
+			System.out.println("Yay 2");
+		}
+
+		RingBuffer<Integer> r2 = new RingBuffer<>(16);
+		Thread producer = new Thread(() -> {
+			for(int i = 1; i <= 1000000; i++){
+				r2.put(i);
+			}
+			r2.close();
+		});
+		producer.start();
+		long sum = 0;
+		int count = 0;
+		boolean inOrder = true;
+		for(Integer i = r2.take(); i != null; i = r2.take()){
+			inOrder &= i == count + 1;
+			count++;
+			sum += i;
+		}
+		producer.join();
+
+		if(inOrder && count == 1000000 && sum == 500000500000L) {
+			System.out.println("Yay 3");
+		}
+
+		RingBuffer<Integer> r3 = new RingBuffer<>(1);
+		boolean[] stopped = new boolean[1];
+		Thread blocked = new Thread(() -> {
+			r3.put(1);
+			stopped[0] = !r3.put(2); //full until cancelled
+		});
+		blocked.start();
+		while(r3.size() == 0){
+			Thread.onSpinWait();
+		}
+		r3.cancel();
+		blocked.join();
+
+		if(stopped[0] && r3.isCancelled()) {
+			System.out.println("Yay 4");
+		}
+	}
+}
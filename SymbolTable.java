@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * SymbolTable implementation with linear-probing hash table.
  * @author Quang Vo.
@@ -7,6 +9,9 @@ class SymbolTable<T> {
 	private TableEntry<String,T>[] storage; //the underlying symbol table
 	private int numOfElements; //number of key-value pairs in the symbol table
 	private TableEntry<String, T> tombStone; //the inactive tombStone
+	private boolean backwardShift; //remove by shifting entries back instead of leaving a tombstone
+	private int numOfTombstones; //number of tombstones in the symbol table
+	private ResizePolicy policy = ResizePolicy.FIXED; //decides when the table grows, shrinks or is cleaned up
 	
 	/**
 	 * Initialize an empty symbol table with the specified initial capacity.
@@ -24,6 +29,30 @@ class SymbolTable<T> {
 		
 	}
 	
+	/**
+	 * Initialize an empty symbol table with the specified initial capacity and removal mode.
+	 * In backward-shift mode remove() never leaves a tombstone: the entries after the
+	 * removed one are moved back into the gap, so probe chains stay as short as if the
+	 * key had never been inserted, even when keys are put and removed over and over.
+	 * @param size the specified initial capacity.
+	 * @param backwardShift true for backward-shift removal, false for tombstones.
+	 */
+	public SymbolTable(int size, boolean backwardShift) {
+		this(size);
+		this.backwardShift = backwardShift;
+	}
+	
+	/**
+	 * Initialize an empty symbol table with the specified initial capacity, removal mode and resize policy.
+	 * @param size the specified initial capacity.
+	 * @param backwardShift true for backward-shift removal, false for tombstones.
+	 * @param policy decides when the table grows, shrinks or is rehashed in place.
+	 */
+	public SymbolTable(int size, boolean backwardShift, ResizePolicy policy) {
+		this(size, backwardShift);
+		this.policy = policy;
+	}
+	
 	/**
 	 * Return the capacity of the symbol table.
 	 * @return the capacity.
@@ -50,7 +79,9 @@ class SymbolTable<T> {
 	 * Insert the key-value pair into the symbol table.
 	 * Use linear probing if that location of key is in use.
 	 * Replace the old value with the new value if the key already exists in the table.
-	 * Double the capacity and rehash if the table is >= 80% full.
+	 * Then ask the resize policy whether to resize; by default the capacity is
+	 * doubled and rehashed if the table is >= 80% full. The table is also doubled
+	 * when no empty index would be left, whatever the policy decides.
 	 * @param k the key.
 	 * @param v the value.
 	 */
@@ -73,23 +104,43 @@ class SymbolTable<T> {
 		//Worst case: O(n), Average case: O(1)
 
 		int pos = Math.abs(k.hashCode()) % storage.length; //get the pos index
+		int probes = 0; //number of indices stepped past
+		int free = -1; //the first tombstone, reused if the key is not further along
 		
-		while(storage[pos] != null && storage[pos] != tombStone){ //check if the index is null or a tombstone
+		//check if the index is null, and stop after one lap when tombstones fill every free index
+		for(int step = 0; step < storage.length && storage[pos] != null; step++){
 			
-			if(storage[pos].getKey().equals(k)){ //if same key, replace the value
+			if(storage[pos] == tombStone){
+				if(free == -1){
+					free = pos;
+				}
+			}
+			else if(storage[pos].getKey().equals(k)){ //if same key, replace the value
 				storage[pos] = new TableEntry<String, T>(k, v);
 				return;
 			}
 			pos = (pos + 1) % storage.length; //move to the next index
+			probes++;
 
 		}
+			if(storage[pos] != null && free == -1){ //a full lap found no room, whatever the policy decided before
+				rehash(storage.length * 2);
+				put(k, v);
+				return;
+			}
+			if(free != -1){
+				pos = free;
+				numOfTombstones--; //the tombstone is reused
+			}
 			storage[pos] = new TableEntry<String, T>(k, v); //place value v at the location of key k
 			numOfElements++;
 		
-		//double the capacity the table if the table is >=80% full, then rehash.
-		if(this.size() >= ((double)(storage.length) * 4/5)){ 
-			rehash(storage.length * 2);
+		//let the policy grow the table, by default if the table is >=80% full, then rehash.
+		int capacity = policy.afterPut(numOfElements, numOfTombstones, storage.length, probes);
+		if(capacity == 0 && numOfElements + numOfTombstones == storage.length){
+			capacity = storage.length * 2; //without an empty index, a lookup of a missing key never stops
 		}
+		resize(capacity);
 	}
 	
 	/**
@@ -116,19 +167,59 @@ class SymbolTable<T> {
 		
 		int pos = Math.abs(k.hashCode()) % storage.length; //get the pos index
 		
-		while(storage[pos] != null && !storage[pos].getKey().equals(k)){ //check if the index is null or the key
+		//check if the index is null or a tombstone or the key
+		while(storage[pos] != null && (storage[pos] == tombStone || !storage[pos].getKey().equals(k))){
 			pos = (pos + 1) % storage.length; //move to the next index
 		}
 		
 		if(storage[pos] == null){ //the key is not in the table
 			return null;
 		}
+		
+		T oldValue = storage[pos].getValue();
+		if(backwardShift){
+			shiftBack(pos); //close the gap instead of leaving a tombstone
+		}
 		else{
-			T oldValue = storage[pos].getValue(); 
 			storage[pos] = tombStone; //set the pos index to be a tombstone
-			numOfElements--;
-			return oldValue; //return the old value
-		}	
+			numOfTombstones++;
+		}
+		numOfElements--;
+		resize(policy.afterRemove(numOfElements, numOfTombstones, storage.length));
+		return oldValue; //return the old value
+	}
+	
+	/**
+	 * Rehash to the capacity chosen by the resize policy.
+	 * @param capacity the new capacity, or 0 to leave the table as it is.
+	 */
+	private void resize(int capacity) {
+		if(capacity != 0){
+			rehash(capacity);
+		}
+	}
+	
+	/**
+	 * Empty the given index and move later entries of the probe chain back into the gap.
+	 * An entry is moved only if the gap is between its home index and where it is now,
+	 * so every entry stays reachable from its home index.
+	 * @param hole the index being emptied.
+	 */
+	private void shiftBack(int hole) {
+		int next = (hole + 1) % storage.length;
+		
+		while(storage[next] != null){ //the chain ends at the first empty index
+			int home = Math.abs(storage[next].getKey().hashCode()) % storage.length;
+			int distanceFromHome = (next - home + storage.length) % storage.length;
+			int distanceFromHole = (next - hole + storage.length) % storage.length;
+			
+			if(distanceFromHome >= distanceFromHole){ //the entry can move back to the hole
+				storage[hole] = storage[next];
+				hole = next;
+			}
+			next = (next + 1) % storage.length; //move to the next index
+		}
+		storage[hole] = null;
 	}
 	
 	/**
@@ -199,7 +290,7 @@ class SymbolTable<T> {
 			return false; 
 		}
 		
-		SymbolTable<T> temp = new SymbolTable<T>(size); //create a temporary symbol table with the new capacity
+		SymbolTable<T> temp = new SymbolTable<T>(size, backwardShift); //create a temporary symbol table with the new capacity
 		
 		for(int i = 0; i < getCapacity(); i++){
 			if(storage[i] != null && storage[i] != tombStone){ //check if the index is null or a tombstone
@@ -208,9 +299,171 @@ class SymbolTable<T> {
 		}
 		
 		this.storage = temp.storage; //update references
+		this.numOfTombstones = 0; //tombstones are not copied
 		return true;		
 	}
 	
+	/**
+	 * Return the number of tombstones in the symbol table.
+	 * @return the number of tombstones.
+	 */
+	public int getTombstones() {
+		return numOfTombstones;
+	}
+	
+	/**
+	 * Return the fraction of indices that hold a tombstone.
+	 * @return the tombstone ratio.
+	 */
+	public double tombstoneRatio() {
+		return (double) numOfTombstones / storage.length;
+	}
+	
+	/**
+	 * Return the probe distance of every key: how far it is from its home index.
+	 * Entry d of the histogram is the number of keys found d indices after their home.
+	 * @return the histogram, as long as the largest distance plus one.
+	 */
+	public int[] probeHistogram() {
+		int[] histogram = new int[1];
+		for(int i = 0; i < storage.length; i++){
+			if(storage[i] != null && storage[i] != tombStone){
+				int home = Math.abs(storage[i].getKey().hashCode()) % storage.length;
+				int distance = (i - home + storage.length) % storage.length;
+				if(distance >= histogram.length){
+					histogram = Arrays.copyOf(histogram, Math.max(distance + 1, histogram.length * 2));
+				}
+				histogram[distance]++;
+			}
+		}
+		int length = histogram.length;
+		while(length > 1 && histogram[length - 1] == 0){
+			length--;
+		}
+		return Arrays.copyOf(histogram, length);
+	}
+	
+	/**
+	 * Collect the probe, tombstone and cluster statistics of the symbol table.
+	 * This scans the whole table, so it is O(capacity).
+	 * @return the statistics.
+	 */
+	public Stats stats() {
+		//a cluster is a run of indices that are not null; tombstones count, since probes walk over them
+		int clusters = 0;
+		int longest = 0;
+		int occupied = 0;
+		int start = 0;
+		while(start < storage.length && storage[start] != null){ //start at an empty index so no cluster wraps around
+			start++;
+		}
+		int run = 0;
+		for(int n = 0; n < storage.length; n++){
+			int i = (start + n) % storage.length;
+			if(storage[i] != null){
+				run++;
+				occupied++;
+			}
+			else if(run > 0){
+				clusters++;
+				longest = Math.max(longest, run);
+				run = 0;
+			}
+		}
+		if(run > 0){
+			clusters++;
+			longest = Math.max(longest, run);
+		}
+		return new Stats(storage.length, numOfElements, numOfTombstones, probeHistogram(), clusters, longest, occupied);
+	}
+	
+	/**
+	 * The probe, tombstone and cluster statistics of a symbol table at one moment.
+	 */
+	public static class Stats {
+		public final int capacity;		// the capacity of the table
+		public final int size;			// the number of keys
+		public final int tombstones;	// the number of tombstones
+		public final int[] probeHistogram;	// number of keys at each distance from their home index
+		public final int clusters;		// number of runs of indices that are not null
+		public final int longestCluster;	// length of the longest run
+		private final int occupied;		// number of indices that are not null
+		
+		/**
+		 * Create the statistics.
+		 * @param capacity the capacity of the table.
+		 * @param size the number of keys.
+		 * @param tombstones the number of tombstones.
+		 * @param probeHistogram number of keys at each distance from their home index.
+		 * @param clusters number of runs of indices that are not null.
+		 * @param longestCluster length of the longest run.
+		 * @param occupied number of indices that are not null.
+		 */
+		Stats(int capacity, int size, int tombstones, int[] probeHistogram, int clusters, int longestCluster, int occupied) {
+			this.capacity = capacity;
+			this.size = size;
+			this.tombstones = tombstones;
+			this.probeHistogram = probeHistogram;
+			this.clusters = clusters;
+			this.longestCluster = longestCluster;
+			this.occupied = occupied;
+		}
+		
+		/**
+		 * Return the fraction of indices that hold a key.
+		 * @return the load factor.
+		 */
+		public double loadFactor() {
+			return (double) size / capacity;
+		}
+		
+		/**
+		 * Return the fraction of indices that hold a tombstone.
+		 * @return the tombstone ratio.
+		 */
+		public double tombstoneRatio() {
+			return (double) tombstones / capacity;
+		}
+		
+		/**
+		 * Return the average distance of a key from its home index.
+		 * @return the mean probe distance, 0 if the table is empty.
+		 */
+		public double meanProbeDistance() {
+			long total = 0;
+			for(int d = 0; d < probeHistogram.length; d++){
+				total += (long) d * probeHistogram[d];
+			}
+			return size == 0 ? 0 : (double) total / size;
+		}
+		
+		/**
+		 * Return the largest distance of a key from its home index.
+		 * @return the max probe distance.
+		 */
+		public int maxProbeDistance() {
+			return probeHistogram.length - 1;
+		}
+		
+		/**
+		 * Return the average length of a run of indices that are not null.
+		 * @return the mean cluster length, 0 if the table is empty.
+		 */
+		public double meanClusterLength() {
+			return clusters == 0 ? 0 : (double) occupied / clusters;
+		}
+		
+		/**
+		 * Create a string representation of the statistics.
+		 * @return the string representation.
+		 */
+		public String toString() {
+			return String.format("capacity=%d size=%d load=%.2f tombstones=%d (%.2f) probe mean=%.2f max=%d clusters=%d mean=%.2f longest=%d histogram=%s",
+					capacity, size, loadFactor(), tombstones, tombstoneRatio(), meanProbeDistance(), maxProbeDistance(),
+					clusters, meanClusterLength(), longestCluster, Arrays.toString(probeHistogram));
+		}
+	}
+	
 	/**
 	 *  A main method to test/demo
 	 *  @param args not used
@@ -314,6 +567,73 @@ class SymbolTable<T> {
 			System.out.println("Yay 12");
 		}
 		
+		SymbolTable<Integer> st4 = new SymbolTable<>(10, true);
+		st4.put("a",1);
+		st4.put("b",2);
+		st4.put("k",3); //"k" has the same home index as "a", so it is placed after "b"
+		
+		if(st4.remove("a").equals(1) && st4.toStringDebug().equals("[0]: null\n[1]: null\n[2]: null\n[3]: null\n[4]: null\n[5]: null\n[6]: null\n[7]: k:3\n[8]: b:2\n[9]: null")) {
+			System.out.println("Yay 13");
+		}
+		
+		for(int i = 0; i < 1000; i++){ //churn without growing the table
+			st4.put("t" + i, i);
+			st4.remove("t" + i);
+		}
+		
+		if(st4.size() == 2 && st4.getCapacity() == 10 && st4.get("k").equals(3) && st4.get("b").equals(2) && !st4.toStringDebug().contains("tombstone")) {
+			System.out.println("Yay 14");
+		}
+		
+		SymbolTable<Integer> st5 = new SymbolTable<>(10);
+		st5.put("a",1);
+		st5.put("b",2);
+		st5.put("k",3); //"k" has the same home index as "a"
+		st5.remove("b");
+		Stats stats = st5.stats(); //[7]: a [8]: tombstone [9]: k
+		
+		if(Arrays.equals(stats.probeHistogram, new int[] {1, 0, 1}) && stats.tombstones == 1 && st5.tombstoneRatio() == 0.1 && stats.clusters == 1 && stats.longestCluster == 3) {
+			System.out.println("Yay 15");
+		}
+		
+		st5.remove("a"); //probes past the tombstone
+		st5.put("k",4); //replaces "k" instead of adding it again at a tombstone
+		
+		if(st5.size() == 1 && st5.get("k").equals(4) && st5.toString().equals("k:4") && st5.getTombstones() == 2) {
+			System.out.println("Yay 16");
+		}
+		
+		SymbolTable<Integer> st6 = new SymbolTable<>(8, false, ResizePolicy.adaptive());
+		for(int i = 0; i < 1000; i++){
+			st6.put("v" + i, i);
+		}
+		int grown = st6.getCapacity();
+		for(int i = 0; i < 990; i++){ //bulk remove
+			st6.remove("v" + i);
+		}
+		
+		if(grown >= 1250 && st6.getCapacity() <= 64 && st6.size() == 10 && st6.get("v995").equals(995) && st6.tombstoneRatio() < 0.25) {
+			System.out.println("Yay 17");
+		}
+		
+		ResizePolicy never = new ResizePolicy() { //a policy that never resizes
+			public int afterPut(int size, int tombstones, int capacity, int probeLength) {
+				return 0;
+			}
+			
+			public int afterRemove(int size, int tombstones, int capacity) {
+				return 0;
+			}
+		};
+		SymbolTable<Integer> st7 = new SymbolTable<>(4, false, never);
+		for(int i = 0; i < 10; i++){
+			st7.put("n" + i, i);
+		}
+		
+		if(st7.size() == 10 && st7.getCapacity() == 16 && st7.get("n0").equals(0) && st7.get("n9").equals(9) && st7.get("missing") == null) {
+			System.out.println("Yay 18");
+		}
+		
 	}
 	
 	//--------------Provided methods below this line--------------
@@ -0,0 +1,225 @@
+/**
+ * A symbol read from a program file, tagged with its kind when it is created.
+ * The tag is computed once so the symbol never has to be classified again.
+ * @author Quang Vo
+ */
+class Token {
+
+	public static final int LITERAL = 0;		// an integer literal
+	public static final int IDENTIFIER = 1;	// a variable name
+	public static final int INT_OP = 2;		// one of Computer.INT_OPS
+	public static final int ASSIGN_OP = 3;		// one of Computer.ASSIGN_OPS
+	public static final int PRINT = 4;			// "print"
+
+	private final String text;	// the symbol as written in the file
+	private final int kind;	// the kind of the symbol
+	private final int opcode;	// the CompiledProgram opcode of the symbol
+	private final int value;	// the value of a literal, 0 otherwise
+
+	/**
+	 * Create a token and classify it.
+	 * @param text the symbol as written in the file.
+	 */
+	public Token(String text) {
+		this.text = text;
+		this.opcode = opcodeOf(text);
+		this.kind = kindOf(opcode);
+		this.value = opcode == CompiledProgram.PUSH_INT ? Integer.parseInt(text) : 0;
+	}
+
+	/**
+	 * Create a literal token for a value, written the way Integer.toString() writes it.
+	 * @param value the value.
+	 */
+	private Token(int value) {
+		this.text = Integer.toString(value);
+		this.opcode = CompiledProgram.PUSH_INT;
+		this.kind = LITERAL;
+		this.value = value;
+	}
+
+	/**
+	 * Create a literal token for a computed value, without parsing it again.
+	 * @param value the value.
+	 * @return the token.
+	 */
+	public static Token literal(int value) {
+		return new Token(value);
+	}
+
+	/**
+	 * Return the symbol as written in the file.
+	 * @return the text of the token.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Return the kind of the token.
+	 * @return LITERAL, IDENTIFIER, INT_OP, ASSIGN_OP or PRINT.
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	/**
+	 * Return the opcode the token compiles to.
+	 * @return the CompiledProgram opcode.
+	 */
+	public int getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Return the value of a literal.
+	 * @return the value, 0 if the token is not a literal.
+	 */
+	public int getValue() {
+		return value;
+	}
+
+	/**
+	 * Return the opcode of a symbol.
+	 * @param item the symbol.
+	 * @return the opcode, PUSH_INT or PUSH_SYM if the symbol is not an operator.
+	 */
+	public static int opcodeOf(String item) {
+		switch(item){
+			case "+": return CompiledProgram.ADD;
+			case "-": return CompiledProgram.SUB;
+			case "*": return CompiledProgram.MUL;
+			case "/": return CompiledProgram.DIV;
+			case "=": return CompiledProgram.ASSIGN;
+			case "+=": return CompiledProgram.ADD_ASSIGN;
+			case "-=": return CompiledProgram.SUB_ASSIGN;
+			case "*=": return CompiledProgram.MUL_ASSIGN;
+			case "/=": return CompiledProgram.DIV_ASSIGN;
+			case "print": return CompiledProgram.PRINT;
+			default: return isInteger(item) ? CompiledProgram.PUSH_INT : CompiledProgram.PUSH_SYM;
+		}
+	}
+
+	/**
+	 * Return the kind of symbol an opcode was compiled from.
+	 * @param opcode the opcode.
+	 * @return LITERAL, IDENTIFIER, INT_OP, ASSIGN_OP or PRINT.
+	 */
+	public static int kindOf(int opcode) {
+		switch(opcode){
+			case CompiledProgram.PUSH_INT: return LITERAL;
+			case CompiledProgram.PUSH_SYM: return IDENTIFIER;
+			case CompiledProgram.PRINT: return PRINT;
+			case CompiledProgram.ADD:
+			case CompiledProgram.SUB:
+			case CompiledProgram.MUL:
+			case CompiledProgram.DIV: return INT_OP;
+			default: return ASSIGN_OP;
+		}
+	}
+
+	/**
+	 * Check if the item is an integer, without throwing an exception.
+	 * Accepts exactly what Integer.parseInt() accepts.
+	 * @param item the item to be checked.
+	 * @return true if the item is an integer, false otherwise.
+	 */
+	public static boolean isInteger(String item) {
+		if(item == null || item.isEmpty()){
+			return false;
+		}
+
+		int i = 0;
+		boolean negative = false;
+		char first = item.charAt(0);
+		if(first == '-' || first == '+'){ //optional sign
+			negative = first == '-';
+			i = 1;
+			if(item.length() == 1){
+				return false;
+			}
+		}
+
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long result = 0;
+		for(; i < item.length(); i++){
+			int digit = Character.digit(item.charAt(i), 10);
+			if(digit < 0){
+				return false; //not a digit
+			}
+			result = result * 10 + digit;
+			if(result > limit){
+				return false; //doesn't fit in an int
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if an integer is written the way Integer.toString() writes it, so its value
+	 * can stand for it. "007", "+5", "-0" and digits other than ASCII are not.
+	 * @param item the integer, which must pass isInteger().
+	 * @return true if the item is the same as Integer.toString() of its value, false otherwise.
+	 */
+	public static boolean isCanonical(String item) {
+		char first = item.charAt(0);
+		if(first == '+'){
+			return false;
+		}
+		int i = first == '-' ? 1 : 0;
+		if(item.charAt(i) == '0' && (i == 1 || item.length() > 1)){
+			return false; //a leading zero, or "-0"
+		}
+		for(; i < item.length(); i++){
+			if(item.charAt(i) < '0' || item.charAt(i) > '9'){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the symbol as written in the file.
+	 * @return the text of the token.
+	 */
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		if(isInteger("12") && isInteger("-7") && isInteger("+7") && isInteger("007") && isInteger("2147483647") && isInteger("-2147483648")) {
+			System.out.println("Yay 1");
+		}
+
+		if(!isInteger("x") && !isInteger("-") && !isInteger("+=") && !isInteger("") && !isInteger("2147483648") && !isInteger("1a") && !isInteger(null)) {
+			System.out.println("Yay 2");
+		}
+
+		Token t1 = new Token("-12");
+		Token t2 = new Token("-");
+		Token t3 = new Token("-=");
+		Token t4 = new Token("total");
+		Token t5 = new Token("print");
+
+		if(t1.getKind() == LITERAL && t1.getValue() == -12 && t2.getKind() == INT_OP && t3.getKind() == ASSIGN_OP && t4.getKind() == IDENTIFIER && t5.getKind() == PRINT) {
+			System.out.println("Yay 3");
+		}
+
+		if(t3.getOpcode() == CompiledProgram.SUB_ASSIGN && t4.getOpcode() == CompiledProgram.PUSH_SYM && t4.toString().equals("total")) {
+			System.out.println("Yay 4");
+		}
+
+		if(isCanonical("0") && isCanonical("-12") && isCanonical("2147483647") && !isCanonical("007") && !isCanonical("+5") && !isCanonical("-0") && !isCanonical("-012") && !isCanonical("\u0663")) {
+			System.out.println("Yay 5");
+		}
+
+		Token t6 = literal(-40);
+		if(t6.getKind() == LITERAL && t6.getValue() == -40 && t6.getText().equals("-40") && t6.getOpcode() == CompiledProgram.PUSH_INT) {
+			System.out.println("Yay 6");
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Reads the symbols of a program file lazily, one at a time.
+ * Symbols are separated by whitespace, the same as with a Scanner,
+ * but only the symbols that have not been handed out yet are kept in memory.
+ * @author Quang Vo
+ */
+class TokenReader implements Closeable {
+	private final Reader in;			// the program being read
+	private final StringBuilder current;	// characters of the symbol being read
+
+	/**
+	 * Open a file for reading.
+	 * @param filename the file to be opened.
+	 * @throws IOException when the file can't be read or found.
+	 */
+	public TokenReader(String filename) throws IOException {
+		this(new BufferedReader(new FileReader(filename), 1 << 16));
+	}
+
+	/**
+	 * Read symbols from a reader.
+	 * @param in the reader.
+	 */
+	public TokenReader(Reader in) {
+		this.in = in;
+		this.current = new StringBuilder();
+	}
+
+	/**
+	 * Read the next symbol.
+	 * @return the symbol, or null if there are no more symbols.
+	 * @throws IOException when the file can't be read.
+	 */
+	public String next() throws IOException {
+		int c = in.read();
+		while(c != -1 && Character.isWhitespace(c)){ //skip the whitespace before the symbol
+			c = in.read();
+		}
+		if(c == -1){
+			return null;
+		}
+
+		current.setLength(0);
+		while(c != -1 && !Character.isWhitespace(c)){
+			current.append((char) c);
+			c = in.read();
+		}
+		return current.toString();
+	}
+
+	/**
+	 * Read up to the given number of symbols into a queue of tokens.
+	 * Each symbol is classified once, here, so the thread that reads it does the work.
+	 * @param max the maximum number of symbols to read.
+	 * @return the front of the queue, or null if there are no more symbols.
+	 * @throws IOException when the file can't be read.
+	 */
+	public Node<Token> nextWindow(int max) throws IOException {
+		Node<Token> front = null;
+		Node<Token> back = null;
+
+		for(int i = 0; i < max; i++){
+			String item = next();
+			if(item == null){
+				break;
+			}
+			Node<Token> newNode = new Node<>(new Token(item));
+			if(front == null){
+				front = back = newNode;
+			}
+			else{
+				back.setNext(newNode); //link the newNode to the back
+				newNode.setPrev(back);
+				back = newNode;
+			}
+		}
+		return front;
+	}
+
+	/**
+	 * Close the file.
+	 * @throws IOException when the file can't be closed.
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) throws IOException {
+		TokenReader r = new TokenReader(new StringReader("  x 3 =\n\tx\r\nprint  "));
+
+		if(r.next().equals("x") && r.next().equals("3") && r.next().equals("=")) {
+			System.out.println("Yay 1");
+		}
+
+		Node<Token> window = r.nextWindow(5);
+		if(Node.listToString(window).equals("x print") && window.getNext().getValue().getKind() == Token.PRINT && r.next() == null && r.nextWindow(5) == null) {
+			System.out.println("Yay 2");
+		}
+		r.close();
+	}
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Replays a trace written by TraceWriter and shows the state of the computer
+ * at the steps asked for, in the same layout as the debug mode of runProgram.
+ * Steps before the first one shown are replayed without printing anything,
+ * so any step of a long trace can be looked at without stepping through it.
+ * Run with: java TraceViewer [trace] [from] [to]
+ * With no step, the final state is shown; with one step, only that step.
+ * With no trace, it checks that a trace replays to the state the program left.
+ * @author Quang Vo
+ */
+class TraceViewer {
+	private final ProgramStack<String> stack = new ProgramStack<>();	// the items on the stack
+	private final IntSymbolTable symbols = new IntSymbolTable(5);		// the variables
+	private final StringBuilder output = new StringBuilder();			// what the last step printed
+	private int step;	// the last step replayed
+	private String symbol = "";	// the symbol of the last step
+
+	/**
+	 * Apply one line of a trace.
+	 * @param line the line.
+	 * @throws IllegalArgumentException if the line is not a step.
+	 */
+	public void apply(String line) {
+		String[] parts = line.split(" ");
+		if(parts.length < 2){
+			throw new IllegalArgumentException("Not a step: " + line);
+		}
+		step = Integer.parseInt(parts[0]);
+		symbol = parts[1];
+		output.setLength(0);
+
+		for(int i = 2; i < parts.length; i++){
+			String change = parts[i];
+			String rest = change.substring(1);
+			switch(change.charAt(0)){
+				case '-':
+					for(int n = Integer.parseInt(rest); n > 0; n--){
+						stack.pop();
+					}
+					break;
+				case '+':
+					stack.push(rest);
+					break;
+				case ':':
+					int equals = rest.lastIndexOf('='); //the name may have an = in it, the value can't
+					symbols.put(rest.substring(0, equals), Integer.parseInt(rest.substring(equals + 1)));
+					break;
+				case '>':
+					output.append(rest).append('\n');
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown change " + change + " in step " + step);
+			}
+		}
+	}
+
+	/**
+	 * Return the last step replayed.
+	 * @return the number of the step, 0 before the first.
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Return the stack after the last step replayed.
+	 * @return the stack.
+	 */
+	public ProgramStack<String> getStack() {
+		return stack;
+	}
+
+	/**
+	 * Return the variables after the last step replayed.
+	 * @return the variables.
+	 */
+	public IntSymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * Create a string representation of the last step, like one step of the debug mode of runProgram.
+	 * @return the string representation.
+	 */
+	public String toString() {
+		return "\n######### Step " + step + " (" + symbol + ") ###############\n\n"
+			+ "----------Step Output----------\n" + output
+			+ "----------Symbol Table---------\n" + symbols + "\n"
+			+ "----------Program Stack--------\n" + stack;
+	}
+
+	/**
+	 * Replay a trace file and print the steps in a range.
+	 * @param filename the trace file.
+	 * @param from the first step to print.
+	 * @param to the last step to print.
+	 * @throws IOException when the file can't be read or is not a trace.
+	 */
+	public static void view(String filename, int from, int to) throws IOException {
+		TraceViewer viewer = new TraceViewer();
+		try(BufferedReader in = new BufferedReader(new FileReader(filename), 1 << 16)) {
+			if(!TraceWriter.HEADER.equals(in.readLine())){
+				throw new IOException(filename + " is not a trace");
+			}
+			String line;
+			while((line = in.readLine()) != null && viewer.getStep() < to){
+				if(line.isEmpty()){
+					continue;
+				}
+				viewer.apply(line);
+				if(viewer.getStep() >= from){
+					System.out.println(viewer);
+				}
+			}
+		}
+		if(viewer.getStep() < from){ //the range is past the end, show the final state
+			System.out.println(viewer);
+		}
+	}
+
+	/**
+	 * Write the trace of a program and replay it, checking each Yay.
+	 * @throws IOException when the trace can't be written.
+	 */
+	private static void testMain() throws IOException {
+		String source = "x 007 = 007 x + print 007 print -0";
+		StringWriter written = new StringWriter();
+		TraceWriter trace = new TraceWriter(written);
+		Computer computer = new Computer();
+		computer.setOutput(OutputSink.NULL);
+		ProgramExecutor executor = new ProgramExecutor(CompiledProgram.compile(Benchmarks.toNodes(source)), computer);
+		executor.setTrace(trace);
+		executor.process(10);
+		trace.close();
+
+		String[] lines = written.toString().split("\n");
+		if(lines[0].equals(TraceWriter.HEADER) && lines[2].equals("2 007 +007") && lines[9].equals("9 print -1 >007") && lines[10].equals("10 -0 +-0")) {
+			System.out.println("Yay 1");
+		}
+
+		TraceViewer viewer = new TraceViewer();
+		for(int i = 1; i < 10; i++){
+			viewer.apply(lines[i]);
+		}
+		boolean printed = viewer.toString().contains("Step Output----------\n007\n"); //a literal prints as it was written
+		viewer.apply(lines[10]);
+
+		Computer legacy = new Computer(); //the debug mode of runProgram shows the stack of process()
+		legacy.setOutput(OutputSink.NULL);
+		legacy.process(Benchmarks.toNodes(source), 10);
+		if(printed && viewer.getStep() == 10 && viewer.getStack().toString().equals(legacy.progStack.toString())
+				&& viewer.getSymbols().toString().equals(legacy.symbols.toString())) {
+			System.out.println("Yay 2");
+		}
+	}
+
+	/**
+	 * The viewer entry point.
+	 * @param args the trace file, and optionally the first and last step to show, or nothing to run the checks.
+	 */
+	public static void main(String[] args) {
+		if(args.length > 3) {
+			System.out.println("Usage: java TraceViewer [trace] [from] [to]");
+			System.exit(0);
+		}
+
+		try {
+			if(args.length == 0) {
+				testMain();
+			}
+			else {
+				int from = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+				int to = args.length > 2 ? Integer.parseInt(args[2]) : from;
+				view(args[0], from, to);
+			}
+		}
+		catch(IOException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}
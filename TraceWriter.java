@@ -0,0 +1,146 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes a trace of a running program, one line per step, holding only what the step changed.
+ * Unlike the debug mode of runProgram, which prints the whole symbol table, stack and
+ * remaining program after every step and waits for Enter, a trace costs O(1) per step
+ * and never pauses. TraceViewer replays a trace to show the state at any step.
+ *
+ * The first line is HEADER. Every other line is the step number and the symbol,
+ * followed by the changes, separated by spaces:
+ *   -n          n items were popped
+ *   +item       an item was pushed, an integer or the name of a variable
+ *   :name=value a variable was set
+ *   >value      a value was printed
+ * For example "5 += -2 :x=7" means step 5 was += which popped two items and set x to 7.
+ * Run with: java TraceWriter [program] [trace]
+ * @author Quang Vo
+ */
+class TraceWriter {
+	public static final String HEADER = "# postfix trace 1";	// the first line of every trace
+
+	private final Writer out;	// where the trace goes
+
+	/**
+	 * Create a trace file.
+	 * @param filename the file to write.
+	 * @throws IOException when the file can't be created.
+	 */
+	public TraceWriter(String filename) throws IOException {
+		this(new BufferedWriter(new FileWriter(filename), 1 << 16));
+	}
+
+	/**
+	 * Write a trace to a writer.
+	 * @param out where the trace goes.
+	 */
+	public TraceWriter(Writer out) {
+		this.out = out;
+		write(HEADER);
+	}
+
+	/**
+	 * Start the line of a step.
+	 * @param step the number of the step, counted from 1.
+	 * @param symbol the symbol.
+	 */
+	public void step(int step, String symbol) {
+		write("\n");
+		write(Integer.toString(step));
+		write(" ");
+		write(symbol);
+	}
+
+	/**
+	 * Record that items were popped.
+	 * @param count the number of items.
+	 */
+	public void pop(int count) {
+		write(" -");
+		write(Integer.toString(count));
+	}
+
+	/**
+	 * Record that an item was pushed.
+	 * @param item the integer or the name of a variable.
+	 */
+	public void push(String item) {
+		write(" +");
+		write(item);
+	}
+
+	/**
+	 * Record that a variable was set.
+	 * @param name the variable.
+	 * @param value the new value.
+	 */
+	public void assign(String name, int value) {
+		write(" :");
+		write(name);
+		write("=");
+		write(Integer.toString(value));
+	}
+
+	/**
+	 * Record that a value was printed.
+	 * @param value the value.
+	 */
+	public void print(int value) {
+		print(Integer.toString(value));
+	}
+
+	/**
+	 * Record that a value was printed.
+	 * @param text the value as it was printed.
+	 */
+	public void print(String text) {
+		write(" >");
+		write(text);
+	}
+
+	/**
+	 * Finish the trace and close the file.
+	 * @throws IOException when the file can't be written.
+	 */
+	public void close() throws IOException {
+		out.write("\n");
+		out.close();
+	}
+
+	/**
+	 * Write some text to the trace.
+	 * @param text the text.
+	 * @throws UncheckedIOException when the trace can't be written.
+	 */
+	private void write(String text) {
+		try {
+			out.write(text);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Record the trace of a program file.
+	 * @param args the program file and the trace file.
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.out.println("Usage: java TraceWriter [program] [trace]");
+			System.exit(0);
+		}
+
+		try {
+			new Computer().runTraced(args[0], args[1]);
+		}
+		catch(IOException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}
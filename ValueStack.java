@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+/**
+ * Array implementation of the stack used by ProgramExecutor.
+ * Integers are kept as primitives and identifiers as the index of their slot,
+ * so values never have to be converted to and from strings.
+ * @author Quang Vo
+ */
+class ValueStack {
+	private int[] values;	// the integer values, unused for symbols
+	private int[] slots;	// the slot of each symbol, -1 for integers
+	private int size;		// number of items in the stack
+	private int highWater;	// largest number of items the stack has held
+
+	/**
+	 * Construct an empty stack.
+	 */
+	public ValueStack() {
+		values = new int[16];
+		slots = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * Insert an integer onto the stack.
+	 * @param value the integer to insert.
+	 */
+	public void push(int value) {
+		if(size == values.length){
+			grow();
+		}
+		values[size] = value;
+		slots[size] = -1;
+		if(++size > highWater){
+			highWater = size;
+		}
+	}
+
+	/**
+	 * Insert a reference to a symbol onto the stack.
+	 * @param slot the slot of the symbol.
+	 */
+	public void pushSymbol(int slot) {
+		if(size == values.length){
+			grow();
+		}
+		slots[size] = slot;
+		if(++size > highWater){
+			highWater = size;
+		}
+	}
+
+	/**
+	 * Return the slot of the symbol on the top of the stack.
+	 * @return the slot, or -1 if the top is an integer.
+	 * @throws NullPointerException if the stack is empty.
+	 */
+	public int peekSymbol() {
+		if(size == 0){
+			throw new NullPointerException("No more items");
+		}
+		return slots[size - 1];
+	}
+
+	/**
+	 * Return the integer on the top of the stack without removing it.
+	 * @return the integer.
+	 * @throws NullPointerException if the stack is empty.
+	 */
+	public int peek() {
+		if(size == 0){
+			throw new NullPointerException("No more items");
+		}
+		return values[size - 1];
+	}
+
+	/**
+	 * Remove the integer on the top of the stack.
+	 * @return the removed integer.
+	 * @throws NullPointerException if the stack is empty.
+	 */
+	public int pop() {
+		if(size == 0){
+			throw new NullPointerException("No more items");
+		}
+		return values[--size];
+	}
+
+	/**
+	 * Remove the symbol on the top of the stack.
+	 * @return the slot of the removed symbol.
+	 * @throws NullPointerException if the stack is empty.
+	 */
+	public int popSymbol() {
+		if(size == 0){
+			throw new NullPointerException("No more items");
+		}
+		return slots[--size];
+	}
+
+	/**
+	 * Create a copy of the stack.
+	 * @return the copy.
+	 */
+	public ValueStack copy() {
+		ValueStack copy = new ValueStack();
+		copy.values = Arrays.copyOf(values, Math.max(size, 16));
+		copy.slots = Arrays.copyOf(slots, Math.max(size, 16));
+		copy.size = size;
+		copy.highWater = highWater;
+		return copy;
+	}
+
+	/**
+	 * Return the number of items in the stack.
+	 * @return the size of the stack.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the largest number of items the stack has held at once.
+	 * @return the high-water mark.
+	 */
+	public int highWaterMark() {
+		return highWater;
+	}
+
+	/**
+	 * Check if the stack is logically empty.
+	 * @return true if empty, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove everything from the stack.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Create a string representation of the stack, items are separated by a space.
+	 * The top is shown to the right, the bottom to the left, like ProgramStack.
+	 * @param names the name of each slot.
+	 * @return the string representation of the stack.
+	 */
+	public String toString(String[] names) {
+		StringBuilder ret = new StringBuilder();
+		for(int i = 0; i < size; i++){
+			if(slots[i] != -1){
+				ret.append(names[slots[i]]);
+			}
+			else{
+				ret.append(values[i]);
+			}
+			ret.append(" "); //add space " "
+		}
+		return ret.toString().trim();
+	}
+
+	/**
+	 * Create a string representation of the stack, showing symbols by their slot.
+	 * @return the string representation of the stack.
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for(int i = 0; i < size; i++){
+			if(slots[i] != -1){
+				ret.append('#').append(slots[i]);
+			}
+			else{
+				ret.append(values[i]);
+			}
+			ret.append(" "); //add space " "
+		}
+		return ret.toString().trim();
+	}
+
+	/**
+	 * Double the capacity of the stack.
+	 */
+	private void grow() {
+		values = Arrays.copyOf(values, values.length * 2);
+		slots = Arrays.copyOf(slots, slots.length * 2);
+	}
+
+	/**
+	 *  A main method to test/demo
+	 *  @param args not used
+	 */
+	public static void main(String[] args) {
+		String[] names = {"x", "y"};
+		ValueStack s1 = new ValueStack();
+		s1.push(3);
+		s1.pushSymbol(0);
+
+		if(s1.toString(names).equals("3 x") && s1.toString().equals("3 #0") && s1.size() == 2 && s1.peekSymbol() == 0) {
+			System.out.println("Yay 1");
+		}
+
+		if(s1.popSymbol() == 0 && s1.peekSymbol() == -1 && s1.pop() == 3 && s1.isEmpty()) {
+			System.out.println("Yay 2");
+		}
+
+		for(int i = 0; i < 100; i++){
+			s1.push(i);
+		}
+		s1.pushSymbol(1);
+
+		if(s1.size() == 101 && s1.popSymbol() == 1 && s1.pop() == 99 && s1.highWaterMark() == 101) {
+			s1.clear();
+			if(s1.isEmpty() && s1.toString().equals("")) {
+				System.out.println("Yay 3");
+			}
+		}
+	}
+}
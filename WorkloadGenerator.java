@@ -0,0 +1,188 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes random, valid postfix programs in the format fileToNodeQueue reads.
+ * Every variable is assigned before it is used, and only non-zero literals are
+ * divided by, so the programs run to the end. The same settings and seed always
+ * give the same program.
+ * Run with: java WorkloadGenerator [file] [tokens] [variables] [depth] [int:assign:print] [seed]
+ * @author Quang Vo
+ */
+class WorkloadGenerator {
+	private final Random random;	// the source of randomness
+	private final String[] vars;	// the variable names
+	private final int depth;		// the maximum depth of an expression
+	private final double intOpsPerStatement;	// average number of INT_OPS in a statement
+	private final double printChance;			// chance that a statement is a print
+
+	private long tokens;	// number of symbols written so far
+
+	/**
+	 * Create a generator.
+	 * @param variables the number of distinct variables.
+	 * @param depth the maximum depth of an expression, at least 1.
+	 * @param intWeight the weight of INT_OPS in the operator mix.
+	 * @param assignWeight the weight of ASSIGN_OPS in the operator mix.
+	 * @param printWeight the weight of print in the operator mix.
+	 * @param seed the random seed.
+	 * @throws IllegalArgumentException if there are no variables, the depth is less than 1,
+	 * a weight is negative, or assignWeight + printWeight is not positive.
+	 */
+	public WorkloadGenerator(int variables, int depth, int intWeight, int assignWeight, int printWeight, long seed) {
+		if(variables < 1 || depth < 1){
+			throw new IllegalArgumentException("Need at least 1 variable and a depth of at least 1");
+		}
+		if(intWeight < 0 || assignWeight < 0 || printWeight < 0 || assignWeight + printWeight <= 0){
+			throw new IllegalArgumentException("Weights must not be negative, and assign + print must be positive");
+		}
+		this.random = new Random(seed);
+		this.vars = new String[variables];
+		for(int i = 0; i < variables; i++){
+			vars[i] = "v" + i;
+		}
+		this.depth = depth;
+		this.intOpsPerStatement = (double) intWeight / (assignWeight + printWeight);
+		this.printChance = (double) printWeight / (assignWeight + printWeight);
+	}
+
+	/**
+	 * Write a program with about the given number of symbols.
+	 * @param out where to write the program.
+	 * @param targetTokens the number of symbols to write; the last statement may go a little over.
+	 * @return the number of symbols written.
+	 * @throws IOException when the program can't be written.
+	 */
+	public long write(Writer out, long targetTokens) throws IOException {
+		tokens = 0;
+		for(String v : vars){ //every variable has a value before it is used
+			symbol(out, v);
+			symbol(out, Integer.toString(random.nextInt(100) + 1));
+			symbol(out, "=");
+			out.write('\n');
+		}
+
+		while(tokens < targetTokens){
+			int ops = (int) intOpsPerStatement;
+			if(random.nextDouble() < intOpsPerStatement - ops){
+				ops++;
+			}
+
+			if(random.nextDouble() < printChance){
+				expression(out, ops, depth);
+				symbol(out, "print");
+			}
+			else{
+				int op = random.nextInt(Computer.ASSIGN_OPS.length);
+				symbol(out, vars[random.nextInt(vars.length)]);
+				if(Computer.ASSIGN_OPS[op].equals("/=")){
+					symbol(out, Integer.toString(random.nextInt(9) + 1)); //never divide by zero
+				}
+				else{
+					expression(out, ops, depth);
+				}
+				symbol(out, Computer.ASSIGN_OPS[op]);
+			}
+			out.write('\n');
+		}
+		return tokens;
+	}
+
+	/**
+	 * Write an expression with up to the given number of INT_OPS.
+	 * @param out where to write the expression.
+	 * @param ops the number of operators wanted.
+	 * @param depth the maximum depth left.
+	 * @return the number of operators written.
+	 * @throws IOException when the expression can't be written.
+	 */
+	private int expression(Writer out, int ops, int depth) throws IOException {
+		if(ops == 0 || depth == 0){
+			symbol(out, random.nextBoolean() ? vars[random.nextInt(vars.length)] : Integer.toString(random.nextInt(100)));
+			return 0;
+		}
+
+		int op = random.nextInt(Computer.INT_OPS.length);
+		int left = random.nextInt(ops); //operators that go in the left operand
+		int written = expression(out, left, depth - 1);
+		if(Computer.INT_OPS[op].equals("/")){
+			symbol(out, Integer.toString(random.nextInt(9) + 1)); //never divide by zero
+		}
+		else{
+			written += expression(out, ops - 1 - left, depth - 1);
+		}
+		symbol(out, Computer.INT_OPS[op]);
+		return written + 1;
+	}
+
+	/**
+	 * Write one symbol followed by a space.
+	 * @param out where to write the symbol.
+	 * @param symbol the symbol.
+	 * @throws IOException when the symbol can't be written.
+	 */
+	private void symbol(Writer out, String symbol) throws IOException {
+		out.write(symbol);
+		out.write(' ');
+		tokens++;
+	}
+
+	/**
+	 * Write a program to a file.
+	 * @param filename the file to write.
+	 * @param targetTokens the number of symbols to write.
+	 * @return the number of symbols written.
+	 * @throws IOException when the file can't be written.
+	 */
+	public long writeFile(String filename, long targetTokens) throws IOException {
+		try(Writer out = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+			return write(out, targetTokens);
+		}
+	}
+
+	/**
+	 * The generator entry point.
+	 * @param args the file, token count, number of variables, expression depth, operator mix and seed.
+	 */
+	public static void main(String[] args) {
+		String usage = "Usage: java WorkloadGenerator [file] [tokens] [variables=16] [depth=3] [int:assign:print=6:3:1] [seed=1]";
+		if(args.length < 2 || args.length > 6) {
+			System.out.println(usage);
+			System.exit(0);
+		}
+
+		long targetTokens;
+		WorkloadGenerator generator;
+		try {
+			targetTokens = Long.parseLong(args[1]);
+			int variables = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+			int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+			String[] mix = (args.length > 4 ? args[4] : "6:3:1").split(":");
+			long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+			if(mix.length != 3){
+				throw new IllegalArgumentException("The operator mix is int:assign:print");
+			}
+
+			generator = new WorkloadGenerator(variables, depth,
+					Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]), seed);
+		}
+		catch(IllegalArgumentException e) { //also a number that can't be parsed
+			System.out.println(e.getMessage());
+			System.out.println(usage);
+			System.exit(0);
+			return;
+		}
+
+		try {
+			long written = generator.writeFile(args[0], targetTokens);
+			System.out.println("Wrote " + written + " symbols to " + args[0]);
+		}
+		catch(IOException e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+}